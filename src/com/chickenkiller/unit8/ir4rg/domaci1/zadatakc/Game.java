@@ -7,12 +7,15 @@ import java.awt.geom.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 import javax.swing.*;
 
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject.*;
-import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Collision;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Circle;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.MutableVector;
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
 
 public class Game extends JPanel implements Runnable {	
@@ -21,42 +24,204 @@ public class Game extends JPanel implements Runnable {
 	private static final String GAME_VERSION = "1.5";
 	private static final double FRAME_BOUNDS_SCALE = 0.9;
 	private static final double DEFAULT_FRAME_TIME = 1000.0 / 60;
-	private static final double DEFAULT_PHYSICS_FRAME_TIME = 1000.0 / 300;
+	private static final double DEFAULT_PHYSICS_FRAME_TIME = 1000.0 / 120;
+	/**
+	 * Upper limit of time simulated in a single iteration of the game loop.
+	 * After a longer stall, the rest of the time is dropped instead of caught up on.
+	 */
+	private static final double MAX_CATCH_UP_TIME = 5 * Game.DEFAULT_PHYSICS_FRAME_TIME;
+	/**
+	 * Milliseconds before each tick of the game loop spent spinning instead of parked, to wake up on time
+	 */
+	private static final double TICK_SPIN_TIME = 0.25;
+	/**
+	 * Milliseconds between frames while nothing animates, or the frame is minimized or does not have the focus
+	 */
+	private static final double THROTTLED_FRAME_TIME = 250;
 	private static final String LEVEL_FILE = "/levels/1.txt";
+	/**
+	 * Command line argument which turns off active rendering, and paints the panel through Swing instead
+	 */
+	private static final String PASSIVE_RENDERING_ARGUMENT = "--passive";
+	/**
+	 * Command line argument which turns on rendering the frame in tiles on all processors, through a TileRenderer
+	 */
+	private static final String TILED_RENDERING_ARGUMENT = "--tiled";
+	/**
+	 * Command line argument which turns on printing the jitter of the game loop and the frames every JITTER_REPORT_TIME
+	 */
+	private static final String JITTER_REPORT_ARGUMENT = "--jitter";
+	/**
+	 * Milliseconds between two jitter reports, each of which covers the ticks since the previous one
+	 */
+	private static final double JITTER_REPORT_TIME = 5000;
 	private static final Color COLOR_SCHEME_RED = new Color(0.5f, 0f, 0f);
 	private static final Color COLOR_SCHEME_BLUE = new Color(0f, 0f, 0.5f);
+	private static final Vector SCORE_POSITION = new Vector(Wall.STARTING_POSITION.getX(), Wall.STARTING_POSITION.getY() / 3);
+	private static final double SCORE_SCALE = 0.0015;
+	private static final Rectangle2D UNIT_RECTANGLE = new Rectangle2D.Double(0, 0, 1, 1);
+	/**
+	 * Fraction of the window above which the whole panel is repainted instead of the dirty region
+	 */
+	private static final double FULL_REPAINT_AREA = 0.5;
+	/**
+	 * Pixels added around each dirty box, to cover antialiasing and rounding to pixels
+	 */
+	private static final int DIRTY_PADDING = 2;
+	/**
+	 * Maximum number of separately painted boxes of the dirty region
+	 */
+	private static final int DIRTY_BOX_COUNT = 4;
 	
 	private final InputListener inputListener;
 	private final JFrame frame;
+	/**
+	 * Canvas drawn to by the RenderLoop, or null if rendering is passive
+	 */
+	private final Canvas canvas;
+	/**
+	 * Reused for every sweep of the ball
+	 */
+	private final ContactManifold manifold;
+	/**
+	 * Paces the game loop, and records the jitter of its ticks
+	 */
+	private final TickScheduler tickScheduler;
+	/**
+	 * True if the jitter of the game loop and the frames is printed every JITTER_REPORT_TIME
+	 */
+	private final boolean jitterReport;
+	/**
+	 * Renders to the canvas from its own thread, or null if rendering is passive
+	 */
+	private final RenderLoop renderLoop;
+	/**
+	 * Reused for every frame, only touched by the thread that renders
+	 */
+	private final RenderQueue renderQueue;
+	/**
+	 * Renders the frame in tiles on all processors, or null if the queue is run directly against the device
+	 */
+	private final TileRenderer tileRenderer;
+	/**
+	 * Reused for collecting the areas changed in every iteration of the game loop, with passive rendering
+	 */
+	private final DirtyRegion dirtyRegion;
+	/**
+	 * Dirty areas waiting to be painted on the event dispatch thread, guarded by its own lock
+	 */
+	private final DirtyRegion pendingRegion;
+	/**
+	 * Copy of the pending region being painted, only touched by the event dispatch thread
+	 */
+	private final DirtyRegion paintedRegion;
+	/**
+	 * Calls paintDirty on the event dispatch thread
+	 */
+	private final Runnable dirtyPainter;
+	/**
+	 * True if the dirty painter was scheduled but did not start yet, guarded by the lock of pendingRegion
+	 */
+	private boolean dirtyPaintScheduled = false;
+	/**
+	 * True while nothing animates and the game loop is blocked until input arrives, only written by the game thread
+	 */
+	private volatile boolean idle = false;
+	/*
+	 * State of the frame, only written by the event dispatch thread
+	 */
+	private volatile boolean minimized = false;
+	private volatile boolean focused = true;
 	
-	private boolean initialized = false;
+	/**
+	 * State of the moving, fading and animated objects and the score,
+	 * published by the game thread at the end of every physics frame
+	 */
+	private final SnapshotExchange snapshots;
+	/*
+	 * Replaced by the game thread whenever it reinitializes, and read by the thread that renders,
+	 * which draws each object from the snapshot it takes in setSnapshot
+	 */
+	private volatile boolean initialized = false;
+	/**
+	 * True if the game was reinitialized since the last call to repaintDirty, which changes the whole window
+	 */
+	private boolean reinitialized = false;
 	private GameState gameState = null;
-	private Color background = null;
+	private volatile Color background = null;
 	private Cursor defaultCursor = null;
 	private Cursor blankCursor = null;
 	private Cursor currentCursor = null;
 	private Color colorScheme = null;
-	private Bounds bounds = null;
-	private Wall wall = null;
-	private Paddle paddle = null;
-	private Ball ball = null;
-	private GameMenu menu = null;
+	private volatile Bounds bounds = null;
+	private volatile Wall wall = null;
+	private volatile Paddle paddle = null;
+	private volatile Ball ball = null;
+	private volatile BallSwarm ballSwarm = null;
+	private volatile GameMenu menu = null;
+	/**
+	 * Objects the ball can bounce off, in order: paddle, brick wall, walls and ceiling
+	 */
+	private Collidable[] collidables = null;
 	
 	/**
 	 * Initializes the game and panel, adds InputListener,
-	 * initializes the frame, and calls initCursors.
+	 * initializes the frame, and adds either the panel or an actively rendered canvas to it.
+	 * @param activeRendering True to render from a RenderLoop, false to paint the panel through Swing
+	 * @param tiledRendering True to render each frame in tiles on all processors
+	 * @param jitterReport True to print the jitter of the game loop and the frames every JITTER_REPORT_TIME
 	 */
-	public Game() {
+	public Game(final boolean activeRendering, final boolean tiledRendering, final boolean jitterReport) {
 		super();
+		this.jitterReport = jitterReport;
 		this.inputListener = new InputListener(this);
-		this.addMouseListener(this.inputListener);
-		this.addMouseMotionListener(this.inputListener);
-		this.setOpaque(true);
+		this.manifold = new ContactManifold();
+		this.renderQueue = new RenderQueue();
+		this.snapshots = new SnapshotExchange(BallSwarm.MAX_BALLS);
+		this.tileRenderer = tiledRendering ? new TileRenderer(this) : null;
+		this.dirtyRegion = new DirtyRegion(Game.DIRTY_BOX_COUNT);
+		this.pendingRegion = new DirtyRegion(Game.DIRTY_BOX_COUNT);
+		this.paintedRegion = new DirtyRegion(Game.DIRTY_BOX_COUNT);
+		this.dirtyPainter = new Runnable() {
+			public void run() { Game.this.paintDirty(); }
+		};
 		this.frame = new JFrame(Game.GAME_TITLE + " " + Game.GAME_VERSION);
-		this.frame.addWindowListener(new WindowAdapter() {
-	        	public void windowClosing(WindowEvent e) { System.exit(0); }
+		WindowAdapter windowListener = new WindowAdapter() {
+			public void windowClosing(WindowEvent e) { System.exit(0); }
+			public void windowIconified(WindowEvent e) { Game.this.setMinimized(true); }
+			public void windowDeiconified(WindowEvent e) { Game.this.setMinimized(false); }
+			public void windowGainedFocus(WindowEvent e) { Game.this.setFocused(true); }
+			public void windowLostFocus(WindowEvent e) { Game.this.setFocused(false); }
+		};
+		this.frame.addWindowListener(windowListener);
+		this.frame.addWindowFocusListener(windowListener);
+		GameState.getInstance().addListener(new GameStateListener() {
+			public void stateChanged(int previousState, int state) {
+				if (GameState.isPlaying(previousState) != GameState.isPlaying(state)) {
+					Game.this.updateCursor();
+				}
+			}
 		});
-		this.frame.getContentPane().add(this);
+		if (activeRendering) {
+			this.canvas = new Canvas();
+			this.canvas.setIgnoreRepaint(true);
+			// Key events go to the frame, so the canvas must not take the focus
+			this.canvas.setFocusable(false);
+			this.canvas.addMouseListener(this.inputListener);
+			this.canvas.addMouseMotionListener(this.inputListener);
+			this.frame.setIgnoreRepaint(true);
+			this.frame.getContentPane().add(this.canvas);
+			this.tickScheduler = new TickScheduler(Game.DEFAULT_PHYSICS_FRAME_TIME, Game.TICK_SPIN_TIME);
+			this.renderLoop = new RenderLoop(this, this.canvas, Game.DEFAULT_FRAME_TIME, Game.THROTTLED_FRAME_TIME);
+		} else {
+			this.canvas = null;
+			this.renderLoop = null;
+			this.addMouseListener(this.inputListener);
+			this.addMouseMotionListener(this.inputListener);
+			this.setOpaque(true);
+			this.frame.getContentPane().add(this);
+			this.tickScheduler = new TickScheduler(Game.DEFAULT_FRAME_TIME, Game.TICK_SPIN_TIME);
+		}
 		Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 		int frameSize = (int) (Game.FRAME_BOUNDS_SCALE * Math.min(screenSize.width, screenSize.height));
 		this.frame.setBounds(0, 0, frameSize, frameSize);
@@ -65,110 +230,247 @@ public class Game extends JPanel implements Runnable {
 		this.frame.addKeyListener(this.inputListener);
 		this.frame.addMouseWheelListener(this.inputListener);
 	}
-	
+
     public static void main(final String s[]) {
-		new Thread(new Game()).start();
+		new Thread(new Game(
+				!Arrays.asList(s).contains(Game.PASSIVE_RENDERING_ARGUMENT),
+				Arrays.asList(s).contains(Game.TILED_RENDERING_ARGUMENT),
+				Arrays.asList(s).contains(Game.JITTER_REPORT_ARGUMENT)
+		)).start();
     }
-    
+
     /**
-     * If the game is initialized, paint the background, do initial scaling,
-     * render all game elements, and render the menu if necessary.
+     * Passive rendering, used if there is no canvas
      */
     public void paint(final Graphics g) {
+    	this.render((Graphics2D) g, this.getSize());
+    }
+
+    /**
+     * If the game is initialized and a snapshot was published, set the drawn objects from the latest snapshot,
+     * interpolated to the current time,
+     * and either render the frame through the TileRenderer,
+     * or do initial scaling, queue the frame and run the queue against g2d.
+     * @param g2d
+     * @param d Size of the drawn area
+     */
+    public void render(final Graphics2D g2d, final Dimension d) {
         if (!this.initialized) {
         	return;
         }
-        Graphics2D g2d = (Graphics2D) g;
-        Dimension d = getSize();
-        g2d.setPaint(this.background);
-        g2d.fillRect(0, 0, d.width, d.height);
+        RenderSnapshot snapshot = this.snapshots.acquire();
+        if (snapshot.getSequence() == 0) {
+        	return;
+        }
+        this.setSnapshot(snapshot, Math.min(
+        		Math.max(TickScheduler.currentTime() - snapshot.getTime(), 0) / Game.DEFAULT_PHYSICS_FRAME_TIME,
+        		1
+        ));
+        if (this.tileRenderer != null) {
+        	this.tileRenderer.render(g2d, d);
+        	return;
+        }
         g2d.scale(d.width, d.height);
-        this.bounds.draw(g2d);
-        this.wall.draw(g2d);
-        this.paddle.draw(g2d);
-        this.ball.draw(g2d);
-        this.menu.draw(g2d);
+        this.queueFrame(g2d, this.renderQueue);
+        this.renderQueue.flush(g2d);
+    }
+
+    /**
+     * Queues the background, all game elements, the menu if necessary, and the score.
+     * Caches of the game elements are brought up to date against g2d, so the queue has to be run before the next call.
+     * @param g2d Graphics scaled to window scale (0..1, 0..1), not drawn to
+     * @param queue
+     */
+    public void queueFrame(final Graphics2D g2d, final RenderQueue queue) {
+        queue.beginLayer();
+        queue.fill(Game.UNIT_RECTANGLE, this.background, false, 0, 0, 1, 1);
+        this.bounds.draw(g2d, queue);
+        this.wall.draw(g2d, queue);
+        this.ballSwarm.draw(g2d, queue);
+        this.paddle.draw(g2d, queue);
+        this.ball.draw(g2d, queue);
+        this.menu.draw(g2d, queue);
         this.menu.drawScore(
-        		g2d,
-        		Wall.STARTING_POSITION.getX(),
-        		Wall.STARTING_POSITION.getY() / 3,
-        		0.0015,
-        		0.0015
+        		queue,
+        		Game.SCORE_POSITION.getX(),
+        		Game.SCORE_POSITION.getY(),
+        		Game.SCORE_SCALE,
+        		Game.SCORE_SCALE
         );
     }
-    
+
     /**
-     * Initializes the game, and run the game loop infinitely, or until interrupted.
-     * Update will be done on every frame, while repaint will be called often enough to maintain DEFAULT_FRAME_TIME.
+     * Initializes the game, starts the RenderLoop if rendering is active,
+     * and run the game loop infinitely, or until interrupted.
+     * The elapsed time is accumulated, and spent on as many updates of exactly DEFAULT_PHYSICS_FRAME_TIME as fit,
+     * capped at MAX_CATCH_UP_TIME, and each update ends with publishing a snapshot of the drawn state.
+     * The leftover time is used to interpolate the drawn objects between the last two physics frames when they are rendered.
+     * Each iteration of the loop is started by the tick scheduler, which keeps the ticks on an absolute schedule.
+     * With passive rendering, iterations are DEFAULT_FRAME_TIME apart and end with a call to repaintDirty,
+     * and with active rendering they are DEFAULT_PHYSICS_FRAME_TIME apart, since frames are paced by the RenderLoop.
+     * While the frame is throttled, passive repaints are THROTTLED_FRAME_TIME apart instead, and the dirty areas add up in between.
+     * Whenever nothing animates, the loop blocks until input arrives, and the time spent blocked is not simulated.
+     * If jitter reports are on, reportJitter is called every JITTER_REPORT_TIME.
      */
     public void run() {
 		this.initCursors();
 		this.initialize();
-		double frameStartTime = 0,
-				prevFrameStartTime = 0,
-				prevGraphicsStartTime = 0;
-		while (true) {
-			prevFrameStartTime = frameStartTime;
-			frameStartTime = System.currentTimeMillis();
-			if (prevGraphicsStartTime == 0) {
-				prevGraphicsStartTime = frameStartTime;
+		double loopStartTime = TickScheduler.currentTime(),
+				prevLoopStartTime = loopStartTime,
+				repaintTime = loopStartTime - Game.THROTTLED_FRAME_TIME,
+				jitterReportTime = loopStartTime,
+				accumulatedTime = 0;
+		if (this.renderLoop != null) {
+			new Thread(this.renderLoop, "Render").start();
+		}
+		while (this.tickScheduler.awaitTick()) {
+			prevLoopStartTime = loopStartTime;
+			loopStartTime = TickScheduler.currentTime();
+			accumulatedTime = Math.min(accumulatedTime + loopStartTime - prevLoopStartTime, Game.MAX_CATCH_UP_TIME);
+			if (this.jitterReport && loopStartTime - jitterReportTime >= Game.JITTER_REPORT_TIME) {
+				jitterReportTime = loopStartTime;
+				this.reportJitter();
 			}
-			this.update(frameStartTime - prevFrameStartTime);
-			if (frameStartTime - prevGraphicsStartTime >= Game.DEFAULT_FRAME_TIME) {
-				prevGraphicsStartTime += Game.DEFAULT_FRAME_TIME;
-				this.repaint();
+			while (accumulatedTime >= Game.DEFAULT_PHYSICS_FRAME_TIME) {
+				accumulatedTime -= Game.DEFAULT_PHYSICS_FRAME_TIME;
+				this.update(Game.DEFAULT_PHYSICS_FRAME_TIME, loopStartTime - accumulatedTime);
+				this.publishSnapshot(loopStartTime - accumulatedTime);
 			}
-			try {
-				Thread.sleep(Math.max(
-						0,
-						(long) (frameStartTime + Game.DEFAULT_PHYSICS_FRAME_TIME) - System.currentTimeMillis()
-				));
-			} catch (InterruptedException e) {
-				break;
+			if (this.canvas == null && (!this.isThrottled() || loopStartTime - repaintTime >= Game.THROTTLED_FRAME_TIME)) {
+				repaintTime = loopStartTime;
+				this.repaintDirty();
+			}
+			if (!this.isAnimating()) {
+				this.setIdle(true);
+				boolean blocked = this.inputListener.awaitInput();
+				this.setIdle(false);
+				if (blocked) {
+					this.tickScheduler.restart();
+					loopStartTime = TickScheduler.currentTime();
+				}
 			}
 		}
 	}
-    
+	
+	/**
+	 * Prints the median and the 99th percentile of the jitter of the game loop, and of the frames if rendering is active,
+	 * and clears the recorded intervals, so that the next report covers only the ticks after this one
+	 */
+	private void reportJitter() {
+		System.out.println(String.format(
+				"Tick jitter: p50 %.3f ms, p99 %.3f ms",
+				this.tickScheduler.getJitterPercentile(50),
+				this.tickScheduler.getJitterPercentile(99)
+		));
+		this.tickScheduler.resetStatistics();
+		if (this.renderLoop != null) {
+			TickScheduler frameScheduler = this.renderLoop.getFrameScheduler();
+			System.out.println(String.format(
+					"Frame jitter: p50 %.3f ms, p99 %.3f ms",
+					frameScheduler.getJitterPercentile(50),
+					frameScheduler.getJitterPercentile(99)
+			));
+			frameScheduler.resetStatistics();
+		}
+	}
+	
+	/**
+	 * Called from the game thread only
+	 * @return True if the game changes without input, because the ball is moving or the walls are animated
+	 */
+	private boolean isAnimating() {
+		int state = this.gameState.getState();
+		return GameState.isPlaying(state) && (GameState.isBallMoving(state) || !GameState.isAnimationOff(state));
+	}
+	
+	/**
+	 * @return True if frames are to be rendered only every THROTTLED_FRAME_TIME milliseconds,
+	 * because nothing animates, or the frame is minimized or does not have the focus
+	 */
+	public boolean isThrottled() {
+		return this.idle || this.minimized || !this.focused;
+	}
+	
+	/*
+	 * Each change of throttling wakes the RenderLoop up, so that it renders the change right away
+	 */
+	
+	private void setIdle(final boolean idle) {
+		this.idle = idle;
+		this.wakeRenderLoop();
+	}
+	
+	private void setMinimized(final boolean minimized) {
+		this.minimized = minimized;
+		this.wakeRenderLoop();
+	}
+	
+	private void setFocused(final boolean focused) {
+		this.focused = focused;
+		this.wakeRenderLoop();
+	}
+	
+	private void wakeRenderLoop() {
+		if (this.renderLoop != null) {
+			this.renderLoop.wake();
+		}
+	}
+	
 	/**
 	 * Toggles the color mode in the GameState, calls updateColorScheme,
 	 * and sets the color of the paddle and bounds accordingly.
 	 */
     public void toggleColorScheme() {
-		if (this.gameState.isRedMode()) {
-			this.gameState.set(GameState.FLAG_MODE_BLUE);
-		} else {
-			this.gameState.set(GameState.FLAG_MODE_RED);
-		}
+		this.gameState.toggle(GameState.FLAG_MODE_RED);
 		this.updateColorScheme();
 		this.paddle.setColor(this.colorScheme);
 		this.bounds.setColor(this.colorScheme);
 	}
-    
+
     public boolean isInitialized() {
     	return this.initialized;
     }
-    
+
+    /**
+     * Initializes the game again, called from the game thread only
+     */
     public void reinitialize() {
     	this.initialized = false;
     	this.initialize();
+    	this.reinitialized = true;
     }
-    
+
     public Paddle getPaddle() {
     	return this.paddle;
     }
-    
+
     public Ball getBall() {
     	return this.ball;
     }
-    
+
+    /**
+     * If the ball is launched, releases a burst of extra balls from its current position
+     */
+    public void spawnBallSwarm() {
+    	if (!this.initialized || !this.gameState.isPlaying() || !this.gameState.isBallMoving()) {
+    		return;
+    	}
+    	Circle ballCircle = this.ball.getCircle();
+    	this.ballSwarm.spawn(
+    			new Vector(ballCircle.getX(), ballCircle.getY()),
+    			this.ball.getVelocity().getLength(),
+    			ballCircle.getRadius()
+    	);
+    }
+
     public Rectangle getFrameBounds() {
     	return this.frame.getBounds();
     }
-    
+
     public Point getMousePositionInFrame() {
     	return this.frame.getMousePosition();
     }
-    
+
     /**
      * Saves the default cursor and creates a custom blank one
      */
@@ -180,11 +482,12 @@ public class Game extends JPanel implements Runnable {
 		    "blank cursor"
 		);
     }
-    
+
     /**
      * If the game is already initialized, do nothing.
      * Initializes GameState, loads sounds, loads the level, updates the colorScheme,
-     * initializes the bounds, initializes the paddle, initializes the ball, initializes the menu.
+     * initializes the bounds, initializes the paddle, initializes the ball, initializes the menu,
+     * and initializes the empty ball swarm.
      */
 	private void initialize() {
 		if (this.initialized) {
@@ -194,6 +497,7 @@ public class Game extends JPanel implements Runnable {
 		this.gameState = GameState.getInstance();
 		this.gameState.set(GameState.FLAG_PLAYING).set(GameState.FLAG_BALL_STATIC);
 		this.gameState.gameTime = this.gameState.lastMilestone = 0;
+		this.updateCursor();
 		
 		SoundManager.getInstance().loadSoundFx(new String[] {
 				"brick.wav", "ceiling.wav", "lightning.wav", "paddle.wav"
@@ -214,20 +518,96 @@ public class Game extends JPanel implements Runnable {
 				new Vector(1.0 / 50, 1.0 / 50)
 		);
 		this.menu = new GameMenu(new Vector(0.25, 0.25), new Vector(0.5, 0.5));
+		this.collidables = new Collidable[] { this.paddle, this.wall, this.bounds };
+		this.ballSwarm = new BallSwarm(this.collidables, this.wall, this.bounds);
 		
 		this.initialized = true;
 	}
-    
+
+    /**
+     * Collects the areas all game objects and the score changed since the last call,
+     * and schedules painting them on the event dispatch thread,
+     * or repaints the whole panel if the game is not initialized or they cover more than FULL_REPAINT_AREA.
+     * Requests to repaint are not used for the boxes, since Swing would coalesce them into their bounding box,
+     * which covers most of the window as soon as both lightning edges change.
+     */
+    private void repaintDirty() {
+    	if (!this.initialized) {
+    		this.repaint();
+    		return;
+    	}
+    	this.dirtyRegion.clear();
+    	if (this.reinitialized) {
+    		this.reinitialized = false;
+    		this.dirtyRegion.add(0, 0, 1, 1);
+    	}
+    	this.bounds.addDirtyArea(this.dirtyRegion);
+    	this.wall.addDirtyArea(this.dirtyRegion);
+    	this.ballSwarm.addDirtyArea(this.dirtyRegion);
+    	this.paddle.addDirtyArea(this.dirtyRegion);
+    	this.ball.addDirtyArea(this.dirtyRegion);
+    	this.menu.addDirtyArea(this.dirtyRegion);
+    	this.menu.addScoreArea(
+    			this.dirtyRegion,
+    			Game.SCORE_POSITION.getX(),
+    			Game.SCORE_POSITION.getY(),
+    			Game.SCORE_SCALE,
+    			Game.SCORE_SCALE
+    	);
+    	if (this.dirtyRegion.isEmpty()) {
+    		return;
+    	}
+    	if (this.dirtyRegion.getArea() > Game.FULL_REPAINT_AREA) {
+    		this.repaint();
+    		return;
+    	}
+    	synchronized (this.pendingRegion) {
+    		this.pendingRegion.add(this.dirtyRegion);
+    		if (!this.dirtyPaintScheduled) {
+    			this.dirtyPaintScheduled = true;
+    			SwingUtilities.invokeLater(this.dirtyPainter);
+    		}
+    	}
+    }
+
+    /**
+     * Takes the pending dirty region, and paints each of its boxes, padded to whole pixels, right away.
+     * The back buffer of Swing keeps the rest of the panel from the previous paint.
+     */
+    private void paintDirty() {
+    	synchronized (this.pendingRegion) {
+    		this.dirtyPaintScheduled = false;
+    		this.paintedRegion.clear();
+    		this.paintedRegion.add(this.pendingRegion);
+    		this.pendingRegion.clear();
+    	}
+    	int width = this.getWidth(),
+    			height = this.getHeight();
+    	for (int i = 0; i < this.paintedRegion.getCount(); i += 1) {
+    		int minX = (int) Math.floor(this.paintedRegion.getMinX(i) * width) - Game.DIRTY_PADDING,
+    				minY = (int) Math.floor(this.paintedRegion.getMinY(i) * height) - Game.DIRTY_PADDING,
+    				maxX = (int) Math.ceil(this.paintedRegion.getMaxX(i) * width) + Game.DIRTY_PADDING,
+    				maxY = (int) Math.ceil(this.paintedRegion.getMaxY(i) * height) + Game.DIRTY_PADDING;
+    		this.paintImmediately(minX, minY, maxX - minX, maxY - minY);
+    	}
+    }
+
     /**
      * If game is not initialized, do nothing.
-     * Updates the bounds if necessary, updates the gameTime and all game objects and collisions if necessary,
+     * Saves the state of the interpolated objects, applies the input captured up to the end of the physics frame,
+     * updates the bounds if necessary, updates the gameTime and all game objects and collisions if necessary,
      * updates the ball velocity if necessary, and sets victory state if the condition was reached.
-     * Calls updateCursor.
+     * @param deltaTime In milliseconds
+     * @param endTime Time the physics frame is simulated up to, in milliseconds
      */
-    private void update(final double deltaTime) {
+    private void update(final double deltaTime, final double endTime) {
 		if (!this.initialized) {
 			return;
 		}
+		this.paddle.saveState();
+		this.ball.saveState();
+		// Input is applied after saving, so that paddle moves are interpolated, and may replace the objects on reset
+		this.inputListener.applyEvents(endTime);
 		if (this.gameState.isPlaying()) {
 			if (!this.gameState.isAnimationOff()) {
 				this.bounds.update(deltaTime);
@@ -236,8 +616,8 @@ public class Game extends JPanel implements Runnable {
 				this.gameState.gameTime += deltaTime / 1000;
 				this.wall.update(deltaTime);
 				this.paddle.update(deltaTime);
-				this.ball.update(deltaTime);
-				this.updateCollisions();
+				this.updateBall(deltaTime);
+				this.ballSwarm.update(deltaTime);
 				if (this.gameState.shouldIncreaseDifficulty()) {
 					this.ball.modifyVelocity(1.1);
 				}
@@ -247,9 +627,41 @@ public class Game extends JPanel implements Runnable {
 				}
 			}
 		}
-		this.updateCursor();
 	}
-    
+
+    /**
+     * If game is initialized, saves the drawn state of the objects into a snapshot, and publishes it to the renderer.
+     * Called from the game thread only.
+     * @param time Time up to which the game was simulated, in milliseconds
+     */
+    private void publishSnapshot(final double time) {
+    	if (!this.initialized) {
+    		return;
+    	}
+    	RenderSnapshot snapshot = this.snapshots.getWriting();
+    	this.bounds.saveSnapshot(snapshot);
+    	this.wall.saveSnapshot(snapshot);
+    	this.paddle.saveSnapshot(snapshot);
+    	this.ball.saveSnapshot(snapshot);
+    	this.ballSwarm.saveSnapshot(snapshot);
+    	this.menu.saveSnapshot(snapshot);
+    	this.snapshots.publish(time);
+    }
+
+    /**
+     * Sets the snapshot the objects are drawn from, interpolating the objects drawn in between physics frames
+     * @param snapshot
+     * @param alpha Fraction of the physics frame elapsed since the snapshot was saved
+     */
+    private void setSnapshot(final RenderSnapshot snapshot, final double alpha) {
+    	this.bounds.setSnapshot(snapshot);
+    	this.wall.setSnapshot(snapshot);
+    	this.paddle.setSnapshot(snapshot, alpha);
+    	this.ball.setSnapshot(snapshot, alpha);
+    	this.ballSwarm.setSnapshot(snapshot);
+    	this.menu.setSnapshot(snapshot);
+    }
+
     /**
      * Sets the colorScheme field based on GameState, and sets the background color
      */
@@ -261,7 +673,7 @@ public class Game extends JPanel implements Runnable {
 		}
     	this.background = this.colorScheme.darker().darker().darker();
     }
-    
+
     /**
      * Reads the LEVEL_FILE and generates a Wall based on it, saving it to the wall field
      */
@@ -279,31 +691,49 @@ public class Game extends JPanel implements Runnable {
 			e.printStackTrace();
 		}
     }
-    
+
     /**
-     * Checks if ball is out-of-bounds, and if so sets the GameState to game over,
+     * Moves the ball through the frame in sub-steps: sweeps it against all collidables,
+     * moves it up to the earliest impact, collides it with all contacts of that impact at once,
+     * and repeats for the rest of the frame.
+     * Then checks if ball is out-of-bounds, and if so sets the GameState to game over,
      * and updates the game timers.
-	 * Checks collisions in order: out-of-bounds, paddle, brick wall, walls and ceiling
 	 */
-	private void updateCollisions() {
-		Area ballArea = this.ball.getArea();
-		if (this.bounds.isOutOfBounds(ballArea)) {
+	private void updateBall(final double deltaTime) {
+		double remainingTime = deltaTime;
+		for (int i = 0; remainingTime > 0; i += 1) {
+			if (i == ContactManifold.MAX_IMPACTS_PER_FRAME) {
+				remainingTime = 0;
+				break;
+			}
+			Circle ballCircle = this.ball.getCircle();
+			MutableVector velocity = this.ball.getVelocity();
+			double dx = velocity.getX() * remainingTime,
+					dy = velocity.getY() * remainingTime;
+			this.manifold.reset();
+			for (Collidable collidable: this.collidables) {
+				collidable.testSweep(ballCircle, dx, dy, this.manifold);
+			}
+			if (this.manifold.isEmpty()) {
+				break;
+			}
+			double impactTime = this.manifold.getTime() * remainingTime;
+			this.ball.update(impactTime);
+			remainingTime -= impactTime;
+			this.manifold.collideSources();
+			this.ball.collide(this.manifold);
+		}
+		this.ball.update(remainingTime);
+		if (this.bounds.isOutOfBounds(this.ball.getCircle())) {
 			this.gameState.set(GameState.FLAG_GAME_OVER);
 			this.gameState.previousTime = this.gameState.gameTime;
 			this.gameState.gameTime = 0;
-			return;
-		}
-		try {
-			this.paddle.testCollision(ballArea);
-			this.wall.testCollision(ballArea);
-			this.bounds.testCollision(ballArea);
-		} catch (Collision c) {
-			this.ball.collide(c.getNVector());
 		}
 	}
 	
 	/**
-	 * Updates the cursor if necessary, based on GameState and currentCursor
+	 * Updates the cursor if necessary, based on GameState and currentCursor.
+	 * Called on initialization, and whenever the game starts or stops playing.
 	 */
 	private void updateCursor() {
 		if (this.gameState.isPlaying() && this.currentCursor != this.blankCursor) {
@@ -1,5 +1,13 @@
 package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc;
 
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * General game status, kept in a single atomic word, so that every transition is one compare-and-set,
+ * and two transitions made at the same time from different threads can never lose one another.
+ * Registered listeners are notified of every transition that changed the state.
+ */
 public class GameState {
 	public static final int FLAG_ALL_DEFAULTS = 0;
 	public static final int FLAG_GAME_OVER = 1;
@@ -15,16 +23,19 @@ public class GameState {
 	public static final int FLAG_ANIMATION_OFF = 64;
 	public static final int FLAG_ANIMATION_ON = -65;
 	
+	private static final GameState instance = new GameState();
+	
+	/*
+	 * Timers in seconds, only written by the game thread, and volatile so that other threads see them
+	 */
 	/**
 	 * Milestones are at 30 seconds.
 	 * Used for periodic ball velocity increase.
 	 */
-	public double lastMilestone = 0;
-	public double gameTime = 0;
-	public double previousTime = 0;
-	public double previousVictoryTime = 0;
-	
-	private static GameState instance = null;
+	public volatile double lastMilestone = 0;
+	public volatile double gameTime = 0;
+	public volatile double previousTime = 0;
+	public volatile double previousVictoryTime = 0;
 	
 	/**
 	 * Bit representation of general game status info
@@ -39,39 +50,98 @@ public class GameState {
 	 * bit5 - red          / blue
 	 * bit6 - no animation / animation
 	 */
-	private int gameState = 0;
+	private final AtomicInteger gameState;
+	private final CopyOnWriteArrayList<GameStateListener> listeners;
 	
-	private GameState() {}
+	private GameState() {
+		this.gameState = new AtomicInteger(0);
+		this.listeners = new CopyOnWriteArrayList<GameStateListener>();
+	}
 	
 	public static GameState getInstance() {
-		if (GameState.instance == null) {
-			GameState.instance = new GameState();
-		}
 		return GameState.instance;
 	}
 	
+	public void addListener(final GameStateListener listener) {
+		this.listeners.add(listener);
+	}
+	
+	public void removeListener(final GameStateListener listener) {
+		this.listeners.remove(listener);
+	}
+	
+	/**
+	 * @return Bit representation of the whole state, read at once, for the static methods of this class
+	 */
+	public int getState() {
+		return this.gameState.get();
+	}
+	
 	/**
 	 * Sets or resets a one or more flags in the game state
 	 * @param flag One of this class's constants prefixed with "FLAG_"
 	 * @return This object
 	 */
 	public GameState set(final int flag) {
-		if (flag < 0) {
-			this.gameState &= flag;
-		} else if (flag > 0) {
-			this.gameState |= flag;
-		} else {
-			this.gameState = 0;
-		}
+		int previousState, state;
+		do {
+			previousState = this.gameState.get();
+			if (flag < 0) {
+				state = previousState & flag;
+			} else if (flag > 0) {
+				state = previousState | flag;
+			} else {
+				state = 0;
+			}
+		} while (!this.gameState.compareAndSet(previousState, state));
+		this.notifyListeners(previousState, state);
 		return this;
 	}
 	
+	/**
+	 * Flips one or more flags in the game state
+	 * @param flag One of this class's positive constants prefixed with "FLAG_"
+	 * @return This object
+	 */
+	public GameState toggle(final int flag) {
+		int previousState;
+		do {
+			previousState = this.gameState.get();
+		} while (!this.gameState.compareAndSet(previousState, previousState ^ flag));
+		this.notifyListeners(previousState, previousState ^ flag);
+		return this;
+	}
+	
+	/**
+	 * If paused, returns to playing, otherwise pauses, even over game over or victory
+	 */
 	public void togglePause() {
-		if (isPaused()) {
-			set(GameState.FLAG_PLAYING);
-		} else {
-			set(GameState.FLAG_PAUSED);
-		}
+		int previousState, state;
+		do {
+			previousState = this.gameState.get();
+			if (GameState.isPaused(previousState)) {
+				state = previousState & GameState.FLAG_PLAYING;
+			} else {
+				state = previousState | GameState.FLAG_PAUSED;
+			}
+		} while (!this.gameState.compareAndSet(previousState, state));
+		this.notifyListeners(previousState, state);
+	}
+	
+	/**
+	 * Sets the ball moving, only if the game is playing
+	 * @return True if the game was playing, otherwise false
+	 */
+	public boolean launchBall() {
+		int previousState;
+		do {
+			previousState = this.gameState.get();
+			if (!GameState.isPlaying(previousState)) {
+				return false;
+			}
+		} while (!this.gameState.compareAndSet(previousState, previousState | GameState.FLAG_BALL_MOVING));
+		this.notifyListeners(previousState, previousState | GameState.FLAG_BALL_MOVING);
+		return true;
 	}
 	
 	/**
@@ -91,34 +161,84 @@ public class GameState {
 	 * @return
 	 */
 	public boolean isPlaying() {
-		return 0 == (this.gameState & 7);
+		return GameState.isPlaying(this.gameState.get());
 	}
 	
 	public boolean isGameOver() {
-		return 1 == (this.gameState & 1);
+		return GameState.isGameOver(this.gameState.get());
 	}
 	
 	public boolean isPaused() {
-		return 1 == ((this.gameState >> 1) & 1);
+		return GameState.isPaused(this.gameState.get());
 	}
 	
 	public boolean isVictory() {
-		return 1 == ((this.gameState >> 2) & 1);
+		return GameState.isVictory(this.gameState.get());
 	}
 	
 	public boolean isBallMoving() {
-		return 1 == ((this.gameState >> 3) & 1);
+		return GameState.isBallMoving(this.gameState.get());
 	}
 	
 	public boolean isMuted() {
-		return 1 == ((this.gameState >> 4) & 1);
+		return GameState.isMuted(this.gameState.get());
 	}
 	
 	public boolean isRedMode() {
-		return 1 == ((this.gameState >> 5) & 1);
+		return GameState.isRedMode(this.gameState.get());
 	}
 	
 	public boolean isAnimationOff() {
-		return 1 == ((this.gameState >> 6) & 1);
+		return GameState.isAnimationOff(this.gameState.get());
+	}
+	
+	/*
+	 * Same as the methods above, but for a state read or received once
+	 */
+	
+	public static boolean isPlaying(final int state) {
+		return 0 == (state & 7);
+	}
+	
+	public static boolean isGameOver(final int state) {
+		return 1 == (state & 1);
+	}
+	
+	public static boolean isPaused(final int state) {
+		return 1 == ((state >> 1) & 1);
+	}
+	
+	public static boolean isVictory(final int state) {
+		return 1 == ((state >> 2) & 1);
+	}
+	
+	public static boolean isBallMoving(final int state) {
+		return 1 == ((state >> 3) & 1);
+	}
+	
+	public static boolean isMuted(final int state) {
+		return 1 == ((state >> 4) & 1);
+	}
+	
+	public static boolean isRedMode(final int state) {
+		return 1 == ((state >> 5) & 1);
+	}
+	
+	public static boolean isAnimationOff(final int state) {
+		return 1 == ((state >> 6) & 1);
+	}
+	
+	/**
+	 * Notifies all listeners, unless the state did not change
+	 * @param previousState
+	 * @param state
+	 */
+	private void notifyListeners(final int previousState, final int state) {
+		if (previousState == state) {
+			return;
+		}
+		for (GameStateListener listener: this.listeners) {
+			listener.stateChanged(previousState, state);
+		}
 	}
 }
@@ -0,0 +1,14 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc;
+
+/**
+ * Reacts to transitions of the GameState, instead of polling it
+ */
+public interface GameStateListener {
+	/**
+	 * Called once for every transition that changed the state, on the thread that made it, after it took effect.
+	 * Use the static methods of GameState to read the flags of either state.
+	 * @param previousState Bit representation of the state before the transition
+	 * @param state Bit representation of the state after the transition
+	 */
+	public void stateChanged(final int previousState, final int state);
+}
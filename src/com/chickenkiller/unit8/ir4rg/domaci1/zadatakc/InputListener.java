@@ -7,15 +7,80 @@ import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject.Paddle;
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject.Wall;
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
 
+/**
+ * Listens to input on the event dispatch thread, and only records it as events into an InputQueue.
+ * The events are applied to the game by applyEvents, called from the game thread at the start of every physics frame,
+ * so the event dispatch thread never touches the game objects or the game state.
+ */
 public class InputListener implements KeyListener, MouseMotionListener, MouseListener, MouseWheelListener {
+	/*
+	 * Kinds of input events
+	 */
+	private static final int EVENT_MOVE = 0;
+	private static final int EVENT_WHEEL = 1;
+	private static final int EVENT_RELEASE = 2;
+	private static final int EVENT_PAUSE = 3;
+	private static final int EVENT_ANIMATION = 4;
+	private static final int EVENT_SWARM = 5;
+	private static final int EVENT_SOUND = 6;
+	private static final int EVENT_RESET = 7;
+	private static final int EVENT_COLOR = 8;
+	
 	private final Game game;
 	private final GameState gameState;
+	private final InputQueue inputQueue;
 	
 	private Robot mouseRobot = null;
+	/**
+	 * True if the mouse pointer is to be moved to the paddle once the events being applied are drained,
+	 * only touched by the game thread
+	 */
+	private boolean mouseWarpPending = false;
 	
 	public InputListener(final Game game) {
 		this.game = game;
 		this.gameState = GameState.getInstance();
+		this.inputQueue = new InputQueue();
+	}
+	
+	/**
+	 * Applies all events captured up to time, in the order they were captured. Called from the game thread only.
+	 * Consecutive move events are coalesced, so only the last of them moves the paddle,
+	 * and the mouse pointer is moved to the paddle at most once, after all events are applied,
+	 * so that it is not sent back to positions the user already moved away from.
+	 * @param time In milliseconds
+	 */
+	public void applyEvents(final double time) {
+		boolean moved = false;
+		double moveX = 0;
+		while (this.inputQueue.poll(time)) {
+			if (this.inputQueue.getKind() == InputListener.EVENT_MOVE) {
+				moved = true;
+				moveX = this.inputQueue.getValue();
+				continue;
+			}
+			// The paddle is moved before any other event, which may depend on its position
+			if (moved) {
+				moved = false;
+				this.movePaddle(moveX);
+			}
+			this.applyEvent(this.inputQueue.getKind(), this.inputQueue.getValue());
+		}
+		if (moved) {
+			this.movePaddle(moveX);
+		}
+		if (this.mouseWarpPending) {
+			this.mouseWarpPending = false;
+			this.moveMouseToPaddle();
+		}
+	}
+	
+	/**
+	 * Blocks until input arrives, or the thread is interrupted. Called from the game thread only.
+	 * @return False if input was already waiting, so that the thread did not block, otherwise true
+	 */
+	public boolean awaitInput() {
+		return this.inputQueue.awaitEvent();
 	}
 	
 	/**
@@ -24,18 +89,12 @@ public class InputListener implements KeyListener, MouseMotionListener, MouseLis
      * ESC or P will pause the game
 	 */
 	public void keyPressed(final KeyEvent e) {
-		if (!this.game.isInitialized()) {
-			return;
-		}
 		switch(e.getKeyCode()) {
 		case KeyEvent.VK_F10:
 			System.exit(0);
 			break;
 		case KeyEvent.VK_ESCAPE: case KeyEvent.VK_P:
-			this.gameState.togglePause();
-			if (this.gameState.isPlaying()) {
-				this.moveMouseToPaddle();
-			}
+			this.inputQueue.offer(InputListener.EVENT_PAUSE, 0);
 			break;
 	  	}
 	}
@@ -43,114 +102,147 @@ public class InputListener implements KeyListener, MouseMotionListener, MouseLis
 	/**
 	 * Controls are:
 	 * a - toggle animation,
+	 * b - release extra balls,
 	 * m - toggle sound,
 	 * r - reset game,
 	 * x - toggle color scheme.
 	 */
 	public void keyTyped(final KeyEvent e) {
-		if (!this.game.isInitialized()) {
-			return;
-		}
 	  	switch(e.getKeyChar()) {
 	  	case 'a':
-	  		if (this.gameState.isAnimationOff()) {
-	  			this.gameState.set(GameState.FLAG_ANIMATION_ON);
-	  		} else {
-	  			this.gameState.set(GameState.FLAG_ANIMATION_OFF);
-	  		}
+	  		this.inputQueue.offer(InputListener.EVENT_ANIMATION, 0);
+	  		break;
+	  	case 'b':
+	  		this.inputQueue.offer(InputListener.EVENT_SWARM, 0);
 	  		break;
 	  	case 'm':
-	  		if (this.gameState.isMuted()) {
-	  			this.gameState.set(GameState.FLAG_SOUND_ON);
-	  		} else {
-	  			this.gameState.set(GameState.FLAG_SOUND_OFF);
-	  		}
+	  		this.inputQueue.offer(InputListener.EVENT_SOUND, 0);
 	  		break;
 	  	case 'r':
-	  		this.resetGame();
+	  		this.inputQueue.offer(InputListener.EVENT_RESET, 0);
 	  		break;
 	  	case 'x':
-	  		this.game.toggleColorScheme();
+	  		this.inputQueue.offer(InputListener.EVENT_COLOR, 0);
 	  		break;
 	  	}
-	  	this.game.repaint();
 	}
-
+	
 	public void mouseClicked(final MouseEvent e){}
 	public void mouseEntered(final MouseEvent e){}
 	public void mouseExited(final MouseEvent e){}
 	public void mousePressed(final MouseEvent e){}
     /**
      * MouseListener implementation
-	 * If game is playing, launch the ball
-	 * Otherwise if the game is over or player has won, restart the game
+	 * Records a release, which launches the ball, or restarts the game if it is over
      */
 	public void mouseReleased(final MouseEvent e) {
-		if (!this.game.isInitialized()) {
-			return;
-		}
-		if (this.gameState.isPlaying()) {
-			this.gameState.set(GameState.FLAG_BALL_MOVING);
-		} else if (this.gameState.isGameOver() || this.gameState.isVictory()) {
-			this.resetGame();
-		}
+		this.inputQueue.offer(InputListener.EVENT_RELEASE, 0);
 	}
-
+	
 	/**
 	 * MouseMotionListener implementation
-	 * Moves the mouse pointer, but keeps X in between the left and right wall
-	 * and keeps Y in the center of the frame.
+	 * Records the X of the mouse pointer, expressed compared to window scale (0..1)
 	 */
 	public void mouseMoved(final MouseEvent e) {
 		Point mousePosition = this.game.getMousePositionInFrame();
-		if (!this.game.isInitialized() || !this.gameState.isPlaying() || (mousePosition == null)) {
+		if (mousePosition == null) {
 			return;
 		}
-		Rectangle frameBounds = this.game.getFrameBounds();
-		double x = mousePosition.getX() / frameBounds.width;
-		Vector paddleScale = this.game.getPaddle().getScale();
-		if (x < Wall.STARTING_POSITION.getX() + paddleScale.getX() / 2) {
-			x = Wall.STARTING_POSITION.getX() + paddleScale.getX() / 2;
-		}
-		if (x > Wall.STARTING_POSITION.getX() + Wall.WALL_WIDTH - paddleScale.getX() / 2) {
-			x = Wall.STARTING_POSITION.getX() + Wall.WALL_WIDTH - paddleScale.getX() / 2;
-		}
-		this.game.getPaddle().setX(x);
-		if (!this.gameState.isBallMoving()) {
-			this.game.getBall().setX(x);
-		}
-		this.moveMouseToPaddle();
+		this.inputQueue.offer(InputListener.EVENT_MOVE, mousePosition.getX() / this.game.getFrameBounds().width);
 	}
 	/**
 	 * Does the same as mouseMoved
 	 */
 	public void mouseDragged(final MouseEvent e) { mouseMoved(e); }
-		
+	
 	/**
 	 * MouseWheelListener implementation
-	 * Affects ball velocity
+	 * Records the direction of the rotation
 	 */
 	public void mouseWheelMoved(final MouseWheelEvent e)  {
-		if (!this.game.isInitialized() || !this.gameState.isPlaying() || e.getWheelRotation() == 0) {
+		if (e.getWheelRotation() == 0) {
+			return;
+		}
+		this.inputQueue.offer(InputListener.EVENT_WHEEL, Math.signum(e.getWheelRotation()));
+	}
+	
+	/**
+	 * Applies a single event other than a move to the game, called from the game thread only
+	 * @param kind One of this class's constants prefixed with "EVENT_"
+	 * @param value Direction of the rotation for wheel events
+	 */
+	private void applyEvent(final int kind, final double value) {
+		switch (kind) {
+		case InputListener.EVENT_WHEEL:
+			// Affects ball velocity
+			if (this.gameState.isPlaying()) {
+				this.game.getBall().modifyVelocity(value > 0 ? 0.95 : 1.0 / 0.95);
+			}
+			break;
+		case InputListener.EVENT_RELEASE:
+			// If game is playing, launch the ball, otherwise if the game is over or player has won, restart the game
+			if (!this.gameState.launchBall() && (this.gameState.isGameOver() || this.gameState.isVictory())) {
+				this.resetGame();
+			}
+			break;
+		case InputListener.EVENT_PAUSE:
+			this.gameState.togglePause();
+			if (this.gameState.isPlaying()) {
+				this.mouseWarpPending = true;
+			}
+			break;
+		case InputListener.EVENT_ANIMATION:
+			this.gameState.toggle(GameState.FLAG_ANIMATION_OFF);
+			break;
+		case InputListener.EVENT_SWARM:
+			this.game.spawnBallSwarm();
+			break;
+		case InputListener.EVENT_SOUND:
+			this.gameState.toggle(GameState.FLAG_SOUND_OFF);
+			break;
+		case InputListener.EVENT_RESET:
+			this.resetGame();
+			break;
+		case InputListener.EVENT_COLOR:
+			this.game.toggleColorScheme();
+			break;
+		}
+	}
+	
+	/**
+	 * If the game is playing, moves the paddle, but keeps X in between the left and right wall,
+	 * moves the ball along with it if it is not launched, and requests keeping the mouse pointer on the paddle
+	 * and in the center of the frame
+	 * @param x X of the mouse pointer, expressed compared to window scale (0..1)
+	 */
+	private void movePaddle(double x) {
+		if (!this.gameState.isPlaying()) {
 			return;
 		}
-		if (e.getWheelRotation() > 0) {
-			this.game.getBall().modifyVelocity(0.95);
-		} else {
-			this.game.getBall().modifyVelocity(1.0 / 0.95);
+		Vector paddleScale = this.game.getPaddle().getScale();
+		if (x < Wall.STARTING_POSITION.getX() + paddleScale.getX() / 2) {
+			x = Wall.STARTING_POSITION.getX() + paddleScale.getX() / 2;
+		}
+		if (x > Wall.STARTING_POSITION.getX() + Wall.WALL_WIDTH - paddleScale.getX() / 2) {
+			x = Wall.STARTING_POSITION.getX() + Wall.WALL_WIDTH - paddleScale.getX() / 2;
+		}
+		this.game.getPaddle().setX(x);
+		if (!this.gameState.isBallMoving()) {
+			this.game.getBall().setX(x);
 		}
+		this.mouseWarpPending = true;
 	}
 	
 	/**
 	 * Called when 'R' is pressed, or when clicking in the menu.
-	 * Updates previousTime if necessary, and reinitializes the game.
+	 * Updates previousTime if necessary, reinitializes the game, and requests moving the mouse pointer to the paddle.
 	 */
 	private void resetGame() {
 		if (!this.gameState.isGameOver()) {
   			this.gameState.previousTime = this.gameState.gameTime;
   		}
   		this.game.reinitialize();
-  		this.moveMouseToPaddle();
+  		this.mouseWarpPending = true;
 	}
 	
 	/**
@@ -0,0 +1,121 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer single-consumer ring buffer of input events, written by the event dispatch thread
+ * and read by the game thread, without locking.
+ * Events are kept in preallocated parallel arrays, and each event occupies the same slot in all of them.
+ * The producer only moves the tail, and the consumer only moves the head, each publishing its slots with an atomic write.
+ * The consumer may park until an event is offered, and is then unparked by the producer.
+ */
+public class InputQueue {
+	/**
+	 * Number of slots, a power of two. Events offered while all slots are taken are dropped.
+	 */
+	private static final int CAPACITY = 256;
+	
+	private final int[] kinds;
+	private final double[] values;
+	/**
+	 * Time each event was captured at, in milliseconds on the clock of the TickScheduler
+	 */
+	private final double[] times;
+	/**
+	 * Number of events ever read, only moved by the consumer
+	 */
+	private final AtomicLong head;
+	/**
+	 * Number of events ever written, only moved by the producer
+	 */
+	private final AtomicLong tail;
+	/**
+	 * Consumer thread parked in awaitEvent, or null
+	 */
+	private volatile Thread waitingThread = null;
+	
+	/*
+	 * Event read by the last successful call to poll, only touched by the consumer
+	 */
+	private int kind = 0;
+	private double value = 0;
+	
+	public InputQueue() {
+		this.kinds = new int[InputQueue.CAPACITY];
+		this.values = new double[InputQueue.CAPACITY];
+		this.times = new double[InputQueue.CAPACITY];
+		this.head = new AtomicLong(0);
+		this.tail = new AtomicLong(0);
+	}
+	
+	/**
+	 * Adds an event captured now. Called from the producer thread only.
+	 * @param kind
+	 * @param value
+	 * @return False if the queue was full and the event was dropped, otherwise true
+	 */
+	public boolean offer(final int kind, final double value) {
+		long tail = this.tail.get();
+		if (tail - this.head.get() == InputQueue.CAPACITY) {
+			return false;
+		}
+		int slot = (int) tail & (InputQueue.CAPACITY - 1);
+		this.kinds[slot] = kind;
+		this.values[slot] = value;
+		this.times[slot] = TickScheduler.currentTime();
+		// A full write, so that it cannot be reordered with reading waitingThread, and a parked consumer is never missed
+		this.tail.set(tail + 1);
+		Thread waitingThread = this.waitingThread;
+		if (waitingThread != null) {
+			LockSupport.unpark(waitingThread);
+		}
+		return true;
+	}
+	
+	/**
+	 * Parks the consumer thread until an event is offered, or the thread is interrupted.
+	 * Called from the consumer thread only.
+	 * @return False if an event was already waiting, so that the thread did not park, otherwise true
+	 */
+	public boolean awaitEvent() {
+		if (this.head.get() != this.tail.get()) {
+			return false;
+		}
+		this.waitingThread = Thread.currentThread();
+		while (this.head.get() == this.tail.get() && !Thread.currentThread().isInterrupted()) {
+			LockSupport.park(this);
+		}
+		this.waitingThread = null;
+		return true;
+	}
+	
+	/**
+	 * Reads the oldest event, if it was captured no later than time, and frees its slot.
+	 * Called from the consumer thread only.
+	 * @param time In milliseconds on the clock of the TickScheduler
+	 * @return True if an event was read into kind and value, otherwise false
+	 */
+	public boolean poll(final double time) {
+		long head = this.head.get();
+		if (head == this.tail.get()) {
+			return false;
+		}
+		int slot = (int) head & (InputQueue.CAPACITY - 1);
+		if (this.times[slot] > time) {
+			return false;
+		}
+		this.kind = this.kinds[slot];
+		this.value = this.values[slot];
+		this.head.lazySet(head + 1);
+		return true;
+	}
+	
+	public int getKind() {
+		return this.kind;
+	}
+	
+	public double getValue() {
+		return this.value;
+	}
+}
@@ -0,0 +1,104 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc;
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Active rendering loop, which draws the game on a Canvas through a BufferStrategy from its own thread,
+ * instead of requesting repaints and waiting for the event dispatch thread to coalesce them.
+ * Input is still handled on the event dispatch thread.
+ * While the game is throttled, frames are rendered further apart, or as soon as the loop is woken up.
+ */
+public class RenderLoop implements Runnable {
+	/**
+	 * Front and back buffer, flipped or blitted depending on what the device supports
+	 */
+	private static final int BUFFER_COUNT = 2;
+	
+	private final Game game;
+	private final Canvas canvas;
+	/**
+	 * Paces the frames, without spinning, since rendering is not as sensitive to waking up late as the game loop.
+	 * The jitter of the frames is reported by the game along with its own.
+	 */
+	private final TickScheduler frameScheduler;
+	private final long throttledFrameTime;
+	/**
+	 * Thread running the loop, or null if it did not start yet
+	 */
+	private volatile Thread thread = null;
+	
+	/**
+	 * @param game Game to render
+	 * @param canvas Displayable canvas to render to
+	 * @param frameTime Milliseconds between the starts of two frames
+	 * @param throttledFrameTime Milliseconds between two frames at most while the game is throttled
+	 */
+	public RenderLoop(final Game game, final Canvas canvas, final double frameTime, final double throttledFrameTime) {
+		this.game = game;
+		this.canvas = canvas;
+		this.frameScheduler = new TickScheduler(frameTime, 0);
+		this.throttledFrameTime = (long) (throttledFrameTime * 1000000);
+	}
+	
+	/**
+	 * @return Scheduler of the frames, which jitter percentiles of the frames can be read from
+	 */
+	public TickScheduler getFrameScheduler() {
+		return this.frameScheduler;
+	}
+	
+	/**
+	 * Creates the buffer strategy, and renders a frame every frameTime milliseconds, until interrupted.
+	 * While the game is throttled, waits up to throttledFrameTime milliseconds, or until woken up, before each frame.
+	 */
+	public void run() {
+		this.thread = Thread.currentThread();
+		this.canvas.createBufferStrategy(RenderLoop.BUFFER_COUNT);
+		BufferStrategy bufferStrategy = this.canvas.getBufferStrategy();
+		while (true) {
+			if (this.game.isThrottled()) {
+				LockSupport.parkNanos(this, this.throttledFrameTime);
+				if (Thread.interrupted()) {
+					break;
+				}
+				this.frameScheduler.restart();
+			} else if (!this.frameScheduler.awaitTick()) {
+				break;
+			}
+			this.renderFrame(bufferStrategy);
+		}
+	}
+	
+	/**
+	 * Ends the current wait for a throttled frame, or the next one if the loop is not waiting.
+	 * Can be called from any thread.
+	 */
+	public void wake() {
+		Thread thread = this.thread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+	
+	/**
+	 * Renders the game to the back buffer and shows it,
+	 * repeating if the buffer contents were restored or lost in the meantime
+	 * @param bufferStrategy
+	 */
+	private void renderFrame(final BufferStrategy bufferStrategy) {
+		do {
+			do {
+				Graphics2D g2d = (Graphics2D) bufferStrategy.getDrawGraphics();
+				try {
+					this.game.render(g2d, this.canvas.getSize());
+				} finally {
+					g2d.dispose();
+				}
+			} while (bufferStrategy.contentsRestored());
+			bufferStrategy.show();
+		} while (bufferStrategy.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
+	}
+}
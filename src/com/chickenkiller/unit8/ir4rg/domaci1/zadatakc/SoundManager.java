@@ -5,24 +5,30 @@ import java.util.HashMap;
 
 import javax.sound.sampled.*;
 
-public class SoundManager {
+public class SoundManager implements GameStateListener {
 	private static final String SOUNDS_CLASS_PATH = "/sounds/";
-	
+
     private static SoundManager instance = null;
-    
+
     private final HashMap<String, Clip> soundFiles;
-    
+    /**
+     * Kept up to date by the GameState transitions, instead of reading the GameState on every play
+     */
+    private volatile boolean muted;
+
     private SoundManager() {
     	this.soundFiles = new HashMap<String, Clip>();
+    	this.muted = GameState.getInstance().isMuted();
+    	GameState.getInstance().addListener(this);
     }
-    
+
     public static SoundManager getInstance() {
     	if (SoundManager.instance == null) {
     		SoundManager.instance = new SoundManager();
     	}
         return SoundManager.instance;
     }
-   
+
     /**
      * Loads all passed audio resources, and adds them to the soundFiles hash
      * @param soundsClassPath Class path to the root of all sound files
@@ -57,13 +63,13 @@ public class SoundManager {
 			}
         }
     }
-   
+	
 	/**
 	 * Plays the sound that corresponds to the passed filename
 	 * @param fileName
 	 */
     public void play(final String fileName) {
-    	if (GameState.getInstance().isMuted()) {
+    	if (this.muted) {
     		return;
     	}
         Clip clip = this.soundFiles.get(fileName);
@@ -76,4 +82,19 @@ public class SoundManager {
         clip.setFramePosition(0);
         clip.start();
     }
+
+    /**
+     * Remembers whether the sound is muted, and stops all sounds that are playing when it gets muted
+     */
+    public void stateChanged(final int previousState, final int state) {
+    	this.muted = GameState.isMuted(state);
+    	if (GameState.isMuted(previousState) || !this.muted) {
+    		return;
+    	}
+    	for (Clip clip: this.soundFiles.values()) {
+    		if (clip.isRunning()) {
+    			clip.stop();
+    		}
+    	}
+    }
 }
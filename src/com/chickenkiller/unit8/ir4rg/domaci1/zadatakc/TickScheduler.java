@@ -0,0 +1,145 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a loop to a fixed period on the monotonic nanosecond clock.
+ * Deadlines are kept on an absolute schedule, each one a period after the previous deadline instead of after the wake-up,
+ * so that late wake-ups do not accumulate into drift. The thread parks until shortly before the deadline,
+ * and optionally spins for the rest, yielding the processor on every check,
+ * since parking alone may wake up late by the timer slack of the system.
+ * The deviation of every tick interval from the period is recorded into a histogram, which jitter percentiles are read from.
+ */
+public class TickScheduler {
+	/**
+	 * Width of a histogram bucket, in nanoseconds
+	 */
+	private static final long BUCKET_WIDTH = 1000;
+	/**
+	 * Number of histogram buckets, deviations beyond the last one are counted in it
+	 */
+	private static final int BUCKET_COUNT = 20000;
+	/**
+	 * Number of periods the loop may fall behind before the schedule is restarted from now instead of caught up on
+	 */
+	private static final int MAX_LATE_PERIODS = 4;
+	
+	private final long period;
+	private final long spinTime;
+	/**
+	 * Number of tick intervals that deviated from the period by each whole number of buckets.
+	 * Only written by the ticking thread, and read by others without locking, so percentiles may be a tick out of date.
+	 */
+	private final long[] histogram;
+	/**
+	 * True if the histogram is to be cleared by the ticking thread before recording the next interval
+	 */
+	private volatile boolean resetRequested = false;
+	
+	private long deadline = 0;
+	private long previousTickTime = 0;
+	private long tickCount = 0;
+	
+	/**
+	 * @param period Milliseconds between two ticks
+	 * @param spinTime Milliseconds before each deadline spent spinning instead of parked, or 0 to never spin
+	 */
+	public TickScheduler(final double period, final double spinTime) {
+		this.period = (long) (period * 1000000);
+		this.spinTime = (long) (spinTime * 1000000);
+		this.histogram = new long[TickScheduler.BUCKET_COUNT];
+	}
+	
+	/**
+	 * @return Milliseconds on the monotonic clock the scheduler runs on, only meaningful compared to another such time
+	 */
+	public static double currentTime() {
+		return System.nanoTime() / 1000000.0;
+	}
+	
+	/**
+	 * Waits until the next deadline, or returns right away if it already passed, and records the tick interval.
+	 * The first call starts the schedule and does not wait.
+	 * @return False if the thread was interrupted, otherwise true
+	 */
+	public boolean awaitTick() {
+		long now = System.nanoTime();
+		if (this.tickCount == 0) {
+			this.deadline = now;
+		}
+		while (now < this.deadline - this.spinTime) {
+			LockSupport.parkNanos(this.deadline - this.spinTime - now);
+			if (Thread.interrupted()) {
+				return false;
+			}
+			now = System.nanoTime();
+		}
+		while (now < this.deadline) {
+			Thread.yield();
+			now = System.nanoTime();
+		}
+		
+		if (this.tickCount > 0) {
+			this.record(now - this.previousTickTime);
+		}
+		this.previousTickTime = now;
+		this.tickCount += 1;
+		
+		this.deadline += this.period;
+		if (now - this.deadline > TickScheduler.MAX_LATE_PERIODS * this.period) {
+			this.deadline = now + this.period;
+		}
+		return true;
+	}
+	
+	/**
+	 * Starts the schedule again from the next call to awaitTick, which does not wait,
+	 * and does not record the interval since the last tick. Used after the loop was blocked on something else.
+	 */
+	public void restart() {
+		this.tickCount = 0;
+	}
+	
+	/**
+	 * Clears the recorded tick intervals before the next tick
+	 */
+	public void resetStatistics() {
+		this.resetRequested = true;
+	}
+	
+	/**
+	 * @param percentile Between 0 and 100
+	 * @return Deviation of the tick interval from the period, in milliseconds,
+	 * which the given percent of the recorded intervals did not exceed, or 0 if none were recorded
+	 */
+	public double getJitterPercentile(final double percentile) {
+		long total = 0;
+		for (int i = 0; i < TickScheduler.BUCKET_COUNT; i += 1) {
+			total += this.histogram[i];
+		}
+		long rank = (long) Math.ceil(percentile / 100 * total),
+				count = 0;
+		for (int i = 0; i < TickScheduler.BUCKET_COUNT; i += 1) {
+			count += this.histogram[i];
+			if (count > 0 && count >= rank) {
+				return (i + 1) * TickScheduler.BUCKET_WIDTH / 1000000.0;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Adds the deviation of the interval from the period to the histogram
+	 * @param interval Nanoseconds since the previous tick
+	 */
+	private void record(final long interval) {
+		if (this.resetRequested) {
+			this.resetRequested = false;
+			for (int i = 0; i < TickScheduler.BUCKET_COUNT; i += 1) {
+				this.histogram[i] = 0;
+			}
+		}
+		int bucket = (int) Math.min(Math.abs(interval - this.period) / TickScheduler.BUCKET_WIDTH, TickScheduler.BUCKET_COUNT - 1);
+		this.histogram[bucket] += 1;
+	}
+}
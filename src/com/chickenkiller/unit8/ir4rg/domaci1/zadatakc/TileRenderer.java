@@ -0,0 +1,176 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject.RenderQueue;
+
+/**
+ * Renders the game into an image split into square tiles, which are rasterized in parallel on all processors.
+ * The frame is queued once on the rendering thread, since queuing brings the caches of the game elements up to date,
+ * and the sorted queue is then run against each tile, clipped to it, from its own worker thread.
+ * The finished image is copied to the device in one piece.
+ */
+public class TileRenderer {
+	/**
+	 * Side of a tile in pixels
+	 */
+	private static final int TILE_SIZE = 256;
+	
+	private final Game game;
+	private final ForkJoinPool pool;
+	/**
+	 * Reused for every frame, only touched by the rendering thread while queuing, and only read by the tiles
+	 */
+	private final RenderQueue queue;
+	/**
+	 * Runs the tile tasks of the frame and waits for them, so that the rendering thread does not join the pool
+	 */
+	private final RecursiveAction frameTask;
+	
+	/**
+	 * Frame the tiles are rendered into, created again when the size of the drawn area changes
+	 */
+	private BufferedImage frame = null;
+	/**
+	 * One task per tile, in rows, reused for every frame of the same size
+	 */
+	private TileTask[] tiles = null;
+	/**
+	 * Number of tiles run in the current frame, those intersecting the clip, moved to the start of runTiles
+	 */
+	private int runCount = 0;
+	private TileTask[] runTiles = null;
+	
+	/**
+	 * Creates a pool with a worker per processor
+	 * @param game Game queuing the frames
+	 */
+	public TileRenderer(final Game game) {
+		this.game = game;
+		this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		this.queue = new RenderQueue();
+		this.frameTask = new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+			
+			/**
+			 * Forks all tiles but the first, runs the first, and waits for the rest
+			 */
+			protected void compute() {
+				TileTask[] runTiles = TileRenderer.this.runTiles;
+				int runCount = TileRenderer.this.runCount;
+				for (int i = 1; i < runCount; i += 1) {
+					runTiles[i].fork();
+				}
+				if (runCount > 0) {
+					runTiles[0].invoke();
+				}
+				for (int i = 1; i < runCount; i += 1) {
+					runTiles[i].join();
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Queues the frame, renders the tiles intersecting the clip of g2d in parallel, and copies the frame to g2d
+	 * @param g2d Graphics of the device, not scaled
+	 * @param d Size of the drawn area
+	 */
+	public void render(final Graphics2D g2d, final Dimension d) {
+		if (d.width <= 0 || d.height <= 0) {
+			return;
+		}
+		if (this.frame == null || this.frame.getWidth() != d.width || this.frame.getHeight() != d.height) {
+			this.resize(d.width, d.height);
+		}
+		
+		Graphics2D frameG2d = this.frame.createGraphics();
+		frameG2d.scale(d.width, d.height);
+		this.game.queueFrame(frameG2d, this.queue);
+		frameG2d.dispose();
+		this.queue.sort();
+		
+		Rectangle clip = g2d.getClipBounds();
+		this.runCount = 0;
+		for (TileTask tile: this.tiles) {
+			if (clip == null || clip.intersects(tile.x, tile.y, tile.width, tile.height)) {
+				tile.reinitialize();
+				this.runTiles[this.runCount] = tile;
+				this.runCount += 1;
+			}
+		}
+		this.frameTask.reinitialize();
+		this.pool.invoke(this.frameTask);
+		this.queue.clear();
+		
+		g2d.drawImage(this.frame, 0, 0, null);
+	}
+	
+	/**
+	 * Creates the frame image and the tiles covering it
+	 * @param width In pixels
+	 * @param height In pixels
+	 */
+	private void resize(final int width, final int height) {
+		this.frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		int columns = (width + TileRenderer.TILE_SIZE - 1) / TileRenderer.TILE_SIZE,
+				rows = (height + TileRenderer.TILE_SIZE - 1) / TileRenderer.TILE_SIZE;
+		this.tiles = new TileTask[columns * rows];
+		for (int row = 0; row < rows; row += 1) {
+			for (int column = 0; column < columns; column += 1) {
+				int x = column * TileRenderer.TILE_SIZE,
+						y = row * TileRenderer.TILE_SIZE;
+				this.tiles[row * columns + column] = new TileTask(
+						x,
+						y,
+						Math.min(TileRenderer.TILE_SIZE, width - x),
+						Math.min(TileRenderer.TILE_SIZE, height - y)
+				);
+			}
+		}
+		this.runTiles = new TileTask[this.tiles.length];
+	}
+	
+	/**
+	 * Runs the queue against a single tile of the frame
+	 */
+	private class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Bounds of the tile in pixels
+		 */
+		private final int x;
+		private final int y;
+		private final int width;
+		private final int height;
+		/**
+		 * Reused for building the transform of each command, only touched by the worker running the tile
+		 */
+		private final AffineTransform commandTransform;
+		
+		public TileTask(final int x, final int y, final int width, final int height) {
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.commandTransform = new AffineTransform();
+		}
+		
+		protected void compute() {
+			BufferedImage frame = TileRenderer.this.frame;
+			Graphics2D tileG2d = frame.createGraphics();
+			try {
+				tileG2d.clipRect(this.x, this.y, this.width, this.height);
+				tileG2d.scale(frame.getWidth(), frame.getHeight());
+				TileRenderer.this.queue.replay(tileG2d, this.commandTransform);
+			} finally {
+				tileG2d.dispose();
+			}
+		}
+	}
+}
@@ -3,31 +3,49 @@ package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
 import java.awt.*;
 import java.awt.geom.*;
 
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Circle;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.MutableVector;
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
 
-public class Ball implements SceneObject {
+public class Ball implements SceneObject, Interpolated {
 	private static final BasicStroke THICK_STROKE = new BasicStroke(0.05f);
-	private static final double MAX_SPEED = 0.0012;
+	private static final double MAX_SPEED = 0.002;
 	private static final double MIN_SPEED = 0.00006;
 	/**
 	 * Circle used to render the ball
 	 */
 	private static final Ellipse2D CIRCLE = new Ellipse2D.Double(-0.5, -0.5, 1, 1);
 	private static final GradientPaint COLOR_GRADIENT = new GradientPaint(-0.5f, -0.5f, Color.white, 0.5f, 0.5f, Color.black, true);
+	/**
+	 * Half of the drawn size compared to scale, including half of the stroke
+	 */
+	private static final double DRAWN_EXTENT = 0.5 + 0.025;
 	
 	private final Vector scale;
 	/**
-	 * Circle used to calculate the area of the ball.
-	 * Always half a frame ahead of the visible ball.
+	 * Circle used to collide the ball, always at the position of the visible ball.
 	 */
-	private final Ellipse2D areaCircle;
+	private final Circle collisionCircle;
 	
-	private Vector position;
-	private Vector velocity;
+	/*
+	 * Mutated in place, so that moving and bouncing the ball does not allocate
+	 */
+	private final MutableVector position;
+	private final MutableVector velocity;
+	/**
+	 * Position at the start of the current physics frame, used for interpolated drawing
+	 */
+	private final MutableVector previousPosition;
 	/**
-	 * Area used to collide the ball
+	 * Area the ball was drawn in since the last call to addDirtyArea, grown by every saveState
 	 */
-	private Area area;
+	private final DirtyRegion movedArea;
+	/*
+	 * Position drawn, interpolated from the snapshot, only touched by the thread that renders
+	 */
+	private double drawnX;
+	private double drawnY;
 	
 	/**
 	 * Initializes all fields
@@ -36,53 +54,67 @@ public class Ball implements SceneObject {
 	 * @param scale Expressed compared to window scale (0..1, 0..1)
 	 */
 	public Ball(final Vector position, final Vector velocity, final Vector scale) {
-		this.position = position;
-		this.velocity = velocity;
+		this.position = new MutableVector(position);
+		this.previousPosition = new MutableVector(position);
+		this.velocity = new MutableVector(velocity);
 		this.scale = scale;
+		this.movedArea = new DirtyRegion(1);
+		this.addDrawnArea(this.movedArea);
+		this.drawnX = position.getX();
+		this.drawnY = position.getY();
 		
-		this.areaCircle = new Ellipse2D.Double();
+		this.collisionCircle = new Circle();
+		this.updateCircle();
 	}
 	
 	/**
-	 * Moves the ball to its new location based on velocity,
-	 * sets areaCircle to 1/2 frame ahead of the visible circle (converted to global coordinates),
-	 * and sets area to that of areaCircle.
+	 * Moves the ball to its new location based on velocity, and moves collisionCircle along with it.
+	 * May be called several times per frame, once for each sub-step between impacts.
 	 */
 	public void update(final double deltaTime) {
-		this.position = this.position.getSum(this.velocity.getProduct(deltaTime));
-		this.areaCircle.setFrame(
-				this.position.getX() + 0.5 * this.velocity.getX() * deltaTime - 0.5 * this.scale.getX(),
-				this.position.getY() + 0.5 * this.velocity.getY() * deltaTime - 0.5 * this.scale.getY(),
-				this.scale.getX(),
-				this.scale.getY()
-		);
-		this.area = new Area(this.areaCircle);
+		this.position.addScaled(this.velocity, deltaTime);
+		this.updateCircle();
+	}
+	
+	public void saveState() {
+		this.previousPosition.set(this.position);
+		this.addDrawnArea(this.movedArea);
+	}
+	
+	public void saveSnapshot(final RenderSnapshot snapshot) {
+		snapshot.ballPreviousX = this.previousPosition.getX();
+		snapshot.ballPreviousY = this.previousPosition.getY();
+		snapshot.ballX = this.position.getX();
+		snapshot.ballY = this.position.getY();
+	}
+	
+	public void setSnapshot(final RenderSnapshot snapshot, final double alpha) {
+		this.drawnX = snapshot.ballPreviousX + (snapshot.ballX - snapshot.ballPreviousX) * alpha;
+		this.drawnY = snapshot.ballPreviousY + (snapshot.ballY - snapshot.ballPreviousY) * alpha;
 	}
 	
 	/**
-	 * Sets transformation matrix, enables anti-aliasing, and renders the ball with gradient fill and a stroke
+	 * Queues the ball with gradient fill and a stroke, anti-aliased, in a layer of its own,
+	 * at the position interpolated from the last snapshot
 	 * @param g2d
+	 * @param queue
 	 */
-	public void draw(final Graphics2D g2d) {
-		AffineTransform oldTransform = g2d.getTransform();
-		
-		g2d.translate(this.position.getX(), this.position.getY());
-		g2d.scale(this.scale.getX(), this.scale.getY());
-		g2d.setStroke(Ball.THICK_STROKE);
-		
-		RenderingHints oldHints = g2d.getRenderingHints();
-		g2d.setRenderingHint(
-        	    RenderingHints.KEY_ANTIALIASING,
-        	    RenderingHints.VALUE_ANTIALIAS_ON);
-		
-		g2d.setPaint(Ball.COLOR_GRADIENT);
-		g2d.fill(Ball.CIRCLE);
-		g2d.setPaint(Color.white);
-		g2d.draw(Ball.CIRCLE);
-		
-		g2d.setRenderingHints(oldHints);
-		
-		g2d.setTransform(oldTransform);
+	public void draw(final Graphics2D g2d, final RenderQueue queue) {
+		queue.beginLayer();
+		queue.fill(Ball.CIRCLE, Ball.COLOR_GRADIENT, true, this.drawnX, this.drawnY, this.scale.getX(), this.scale.getY());
+		queue.draw(Ball.CIRCLE, Color.white, Ball.THICK_STROKE, true, this.drawnX, this.drawnY, this.scale.getX(), this.scale.getY());
+	}
+	
+	/**
+	 * Adds the area the ball was drawn in since the last call, along with its current area,
+	 * which is kept to be added next time
+	 * @param region
+	 */
+	public void addDirtyArea(final DirtyRegion region) {
+		this.addDrawnArea(this.movedArea);
+		region.add(this.movedArea);
+		this.movedArea.clear();
+		this.addDrawnArea(this.movedArea);
 	}
 	
 	/**
@@ -90,7 +122,15 @@ public class Ball implements SceneObject {
 	 * @param x Absolute x, expressed in local coordinates
 	 */
 	public void setX(final double x) {
-		this.position = new Vector(x, this.position.getY(), this.position.getZ());
+		this.position.setX(x);
+		this.updateCircle();
+	}
+	
+	/**
+	 * @return The velocity of the ball, which should not be modified by the caller
+	 */
+	public MutableVector getVelocity() {
+		return this.velocity;
 	}
 	
 	/**
@@ -104,35 +144,42 @@ public class Ball implements SceneObject {
 				(newSpeed <  Ball.MIN_SPEED && factor < 1)){
 			return;
 		}
-		this.velocity = this.velocity.getProduct(newSpeed / this.velocity.getLength());
+		this.velocity.scale(newSpeed / oldSpeed);
 	}
 	
 	/**
 	 * Used to calculate collisions with the ball
-	 * @return java.awt.geom.Area
+	 * @return Circle at the position of the visible ball
 	 */
-	public Area getArea() {
-		return this.area;
+	public Circle getCircle() {
+		return this.collisionCircle;
 	}
 	
 	/**
-	 * Simple elastic collision, where X or Y or both or neither may be inverted
-	 * @param nVector Sum of normal vectors of all colliding edges
-	 */
-	public void collide(final Vector nVector) {
-		if (nVector.getX() * this.velocity.getX() < 0) {
-			this.velocity = new Vector(
-					-this.velocity.getX(),
-					this.velocity.getY(),
-					this.velocity.getZ()
-			);
-		}
-		if (nVector.getY() * this.velocity.getY() < 0) {
-			this.velocity = new Vector(
-					this.velocity.getX(),
-					-this.velocity.getY(),
-					this.velocity.getZ()
-			);
-		}
+	 * Resolves all contacts of the manifold together.
+	 * First pushes the ball out of any objects it overlaps,
+	 * then does a simple elastic collision, where X or Y or both or neither may be inverted,
+	 * based on the sum of normal vectors of all contacts.
+	 * @param manifold
+	 */
+	public void collide(final ContactManifold manifold) {
+		this.position.add(manifold.getPushX(), manifold.getPushY());
+		this.updateCircle();
+		this.velocity.setX(ContactManifold.reflect(this.velocity.getX(), manifold.getNormalSumX()));
+		this.velocity.setY(ContactManifold.reflect(this.velocity.getY(), manifold.getNormalSumY()));
+	}
+	
+	private void updateCircle() {
+		this.collisionCircle.set(this.position.getX(), this.position.getY(), 0.5 * this.scale.getX());
+	}
+	
+	/**
+	 * Adds the area the ball is drawn in at its current position
+	 * @param region
+	 */
+	private void addDrawnArea(final DirtyRegion region) {
+		double halfWidth = Ball.DRAWN_EXTENT * this.scale.getX(),
+				halfHeight = Ball.DRAWN_EXTENT * this.scale.getY();
+		region.add(this.position.getX() - halfWidth, this.position.getY() - halfHeight, 2 * halfWidth, 2 * halfHeight);
 	}
 }
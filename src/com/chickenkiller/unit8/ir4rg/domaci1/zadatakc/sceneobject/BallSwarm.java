@@ -0,0 +1,263 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.util.Random;
+
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Circle;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
+
+/**
+ * Extra balls of the multi-ball mode.
+ * Instead of one Ball object per ball, all of them are kept in parallel primitive arrays,
+ * moved and collided in a single loop, and drawn as one path.
+ * Unlike the main ball, losing these balls does not end the game.
+ */
+public class BallSwarm implements SceneObject {
+	private static final BasicStroke THIN_STROKE = new BasicStroke(0.002f);
+	private static final Color FILL_COLOR = Color.lightGray;
+	private static final Random RAND = new Random();
+	public static final int MAX_BALLS = 4096;
+	/**
+	 * Number of balls added by a single call to spawn
+	 */
+	private static final int BURST_SIZE = 256;
+	
+	private final Collidable[] collidables;
+	/**
+	 * The only collidable the balls have an effect on, by damaging its bricks
+	 */
+	private final Wall wall;
+	private final Bounds bounds;
+	/*
+	 * Ball store, each ball occupies the same index in all arrays
+	 */
+	private final double[] x;
+	private final double[] y;
+	private final double[] velocityX;
+	private final double[] velocityY;
+	private final double[] radius;
+	/**
+	 * Temporary circle and contact manifold used for sweeping each ball
+	 */
+	private final Circle circle;
+	private final ContactManifold manifold;
+	/*
+	 * Path and circle reused for drawing all the balls at once
+	 */
+	private final Path2D path;
+	private final Ellipse2D ellipse;
+	/**
+	 * Area the balls were drawn in since the last call to addDirtyArea, grown by every update
+	 */
+	private final DirtyRegion movedArea;
+	
+	private int count = 0;
+	/**
+	 * Snapshot the balls are drawn from, only touched by the thread that renders
+	 */
+	private RenderSnapshot drawnSnapshot = null;
+	
+	/**
+	 * Initializes all fields and allocates the ball store
+	 * @param collidables Objects the balls can bounce off
+	 * @param wall Wall among the collidables, whose bricks the balls damage
+	 * @param bounds Used to remove balls that went out-of-bounds
+	 */
+	public BallSwarm(final Collidable[] collidables, final Wall wall, final Bounds bounds) {
+		this.collidables = collidables;
+		this.wall = wall;
+		this.bounds = bounds;
+		
+		this.x = new double[BallSwarm.MAX_BALLS];
+		this.y = new double[BallSwarm.MAX_BALLS];
+		this.velocityX = new double[BallSwarm.MAX_BALLS];
+		this.velocityY = new double[BallSwarm.MAX_BALLS];
+		this.radius = new double[BallSwarm.MAX_BALLS];
+		
+		this.circle = new Circle();
+		this.manifold = new ContactManifold();
+		this.path = new Path2D.Double();
+		this.ellipse = new Ellipse2D.Double();
+		this.movedArea = new DirtyRegion(1);
+	}
+	
+	/**
+	 * Moves every ball through the frame, bouncing it off the collidables,
+	 * and removes the balls that went out-of-bounds
+	 */
+	public void update(final double deltaTime) {
+		for (int i = 0; i < this.count; i += 1) {
+			this.moveBall(i, deltaTime);
+			this.circle.set(this.x[i], this.y[i], this.radius[i]);
+			if (this.bounds.isOutOfBounds(this.circle)) {
+				this.remove(i);
+				i -= 1;
+			}
+		}
+		this.addDrawnArea(this.movedArea);
+	}
+	
+	/**
+	 * Copies all balls into the snapshot, called from the game thread at the end of every physics frame
+	 * @param snapshot
+	 */
+	public void saveSnapshot(final RenderSnapshot snapshot) {
+		System.arraycopy(this.x, 0, snapshot.swarmX, 0, this.count);
+		System.arraycopy(this.y, 0, snapshot.swarmY, 0, this.count);
+		System.arraycopy(this.radius, 0, snapshot.swarmRadius, 0, this.count);
+		snapshot.swarmCount = this.count;
+	}
+	
+	/**
+	 * Sets the snapshot the balls are drawn from, called from the thread that renders before drawing
+	 * @param snapshot
+	 */
+	public void setSnapshot(final RenderSnapshot snapshot) {
+		this.drawnSnapshot = snapshot;
+	}
+	
+	/**
+	 * Appends all balls of the snapshot to a single path, and queues filling and stroking it once, in a layer of its own
+	 * @param g2d
+	 * @param queue
+	 */
+	public void draw(final Graphics2D g2d, final RenderQueue queue) {
+		RenderSnapshot snapshot = this.drawnSnapshot;
+		if (snapshot == null || snapshot.swarmCount == 0) {
+			return;
+		}
+		this.path.reset();
+		for (int i = 0; i < snapshot.swarmCount; i += 1) {
+			this.ellipse.setFrame(
+					snapshot.swarmX[i] - snapshot.swarmRadius[i],
+					snapshot.swarmY[i] - snapshot.swarmRadius[i],
+					2 * snapshot.swarmRadius[i],
+					2 * snapshot.swarmRadius[i]
+			);
+			this.path.append(this.ellipse, false);
+		}
+		queue.beginLayer();
+		queue.fill(this.path, BallSwarm.FILL_COLOR, false, 0, 0, 1, 1);
+		queue.draw(this.path, Color.white, BallSwarm.THIN_STROKE, false, 0, 0, 1, 1);
+	}
+	
+	/**
+	 * Adds the area the balls were drawn in since the last call, along with their current area,
+	 * which is kept to be added next time
+	 * @param region
+	 */
+	public void addDirtyArea(final DirtyRegion region) {
+		this.addDrawnArea(this.movedArea);
+		region.add(this.movedArea);
+		this.movedArea.clear();
+		this.addDrawnArea(this.movedArea);
+	}
+	
+	/**
+	 * Adds up to BURST_SIZE balls at the given position, moving upwards in random directions
+	 * @param position Expressed compared to window scale (0..1, 0..1)
+	 * @param speed Length of the velocity of each ball
+	 * @param radius Expressed compared to window scale (0..1, 0..1)
+	 */
+	public void spawn(final Vector position, final double speed, final double radius) {
+		int newCount = Math.min(this.count + BallSwarm.BURST_SIZE, BallSwarm.MAX_BALLS);
+		for (int i = this.count; i < newCount; i += 1) {
+			double angle = Math.PI * 0.1 + BallSwarm.RAND.nextDouble() * Math.PI * 0.8;
+			this.x[i] = position.getX();
+			this.y[i] = position.getY();
+			this.velocityX[i] = speed * Math.cos(angle);
+			this.velocityY[i] = -speed * Math.sin(angle);
+			this.radius[i] = radius;
+		}
+		this.count = newCount;
+	}
+	
+	public int getCount() {
+		return this.count;
+	}
+	
+	/**
+	 * Same sub-stepping as the main ball: sweeps the ball against all collidables,
+	 * moves it up to the earliest impact, damages the hit bricks without a sound, bounces it,
+	 * and repeats for the rest of the frame
+	 * @param i Index of the ball in the store
+	 * @param deltaTime
+	 */
+	private void moveBall(final int i, final double deltaTime) {
+		double remainingTime = deltaTime;
+		for (int j = 0; remainingTime > 0; j += 1) {
+			if (j == ContactManifold.MAX_IMPACTS_PER_FRAME) {
+				remainingTime = 0;
+				break;
+			}
+			this.circle.set(this.x[i], this.y[i], this.radius[i]);
+			double dx = this.velocityX[i] * remainingTime,
+					dy = this.velocityY[i] * remainingTime;
+			this.manifold.reset();
+			for (Collidable collidable: this.collidables) {
+				collidable.testSweep(this.circle, dx, dy, this.manifold);
+			}
+			if (this.manifold.isEmpty()) {
+				break;
+			}
+			double impactTime = this.manifold.getTime() * remainingTime;
+			this.x[i] += this.velocityX[i] * impactTime;
+			this.y[i] += this.velocityY[i] * impactTime;
+			remainingTime -= impactTime;
+			for (int k = 0; k < this.manifold.getCount(); k += 1) {
+				if (this.manifold.getSource(k) == this.wall) {
+					this.wall.damage(this.manifold, k);
+				}
+			}
+			this.bounce(i);
+		}
+		this.x[i] += this.velocityX[i] * remainingTime;
+		this.y[i] += this.velocityY[i] * remainingTime;
+	}
+	
+	/**
+	 * Same contact resolution as Ball.collide, using the current manifold
+	 * @param i Index of the ball in the store
+	 */
+	private void bounce(final int i) {
+		this.x[i] += this.manifold.getPushX();
+		this.y[i] += this.manifold.getPushY();
+		this.velocityX[i] = ContactManifold.reflect(this.velocityX[i], this.manifold.getNormalSumX());
+		this.velocityY[i] = ContactManifold.reflect(this.velocityY[i], this.manifold.getNormalSumY());
+	}
+	
+	/**
+	 * Removes the ball by moving the last ball in its place
+	 * @param i Index of the ball in the store
+	 */
+	private void remove(final int i) {
+		this.count -= 1;
+		this.x[i] = this.x[this.count];
+		this.y[i] = this.y[this.count];
+		this.velocityX[i] = this.velocityX[this.count];
+		this.velocityY[i] = this.velocityY[this.count];
+		this.radius[i] = this.radius[this.count];
+	}
+	
+	/**
+	 * Adds the bounding box of all balls at their current positions, including half of the stroke
+	 * @param region
+	 */
+	private void addDrawnArea(final DirtyRegion region) {
+		if (this.count == 0) {
+			return;
+		}
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE,
+				maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < this.count; i += 1) {
+			minX = Math.min(minX, this.x[i] - this.radius[i]);
+			minY = Math.min(minY, this.y[i] - this.radius[i]);
+			maxX = Math.max(maxX, this.x[i] + this.radius[i]);
+			maxY = Math.max(maxY, this.y[i] + this.radius[i]);
+		}
+		double halfStroke = 0.5 * BallSwarm.THIN_STROKE.getLineWidth();
+		region.add(minX - halfStroke, minY - halfStroke, maxX - minX + 2 * halfStroke, maxY - minY + 2 * halfStroke);
+	}
+}
@@ -2,17 +2,22 @@ package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.awt.image.BufferedImage;
 
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.SoundManager;
-import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Collision;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Box;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Circle;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Impact;
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
 
 public class Bounds implements SceneObject, Collidable {
+	static final int LIGHTNING_WALL_COUNT = 4;
 	private static final Stroke HAIRLINE_STROKE = new BasicStroke(0);
 	/**
-	 * Area used to detect if other object is out-of-bounds
+	 * Box used to detect if other object is out-of-bounds
 	 */
-	private static final Area BOUNDS_AREA = new Area(new Rectangle2D.Double(0, 0, 1, 1));
+	private static final Box BOUNDS_BOX = new Box(0, 0, 1, 1);
 	private static final GradientPaint DIAGONAL_GRADIENT = new GradientPaint(-0.1f, -0.1f, Color.black, 0.35f, 0.35f, Color.white, true);
 	private static final GradientPaint VERTICAL_GRADIENT = new GradientPaint(0, -0.1f, Color.black, 0, 0.4f, Color.lightGray, true);
 	private static final RoundRectangle2D CEILING_SHAPE = new RoundRectangle2D.Double(0, 0, 1, 1, 0.1, 0.5);
@@ -20,16 +25,16 @@ public class Bounds implements SceneObject, Collidable {
 	private static final Rectangle2D BOTTOM_RECTANGLE = new Rectangle2D.Double(0, 0, 1, 1);
 	
 	/**
-	 * Three areas used to detect collision between ball and edges
+	 * Three boxes used to detect collision between ball and edges
 	 * 0 - right edge,
 	 * 1 - ceiling,
 	 * 2 - left edge
 	 */
-	private final Area[] edgeAreas;
+	private final Box[] edgeBoxes;
 	/**
-	 * Temporary area used for detecting collisions
+	 * Temporary impact used for sweeping the ball
 	 */
-	private final Area intersection;
+	private final Impact impact;
 	/**
 	 * Four lightning walls, two used for each edge:
 	 * 0 - far left,
@@ -40,9 +45,26 @@ public class Bounds implements SceneObject, Collidable {
 	private final LightningWall[] lightningWalls;
 	
 	private GradientPaint bottomGradient;
+	/**
+	 * Out-of-bounds area, ceiling and bulbs, rendered at device resolution.
+	 * Kept as a BufferedImage, since it rarely changes and Java2D can keep such images accelerated.
+	 */
+	private BufferedImage background = null;
+	/**
+	 * Gradient the background was rendered with, only touched by the thread that renders
+	 */
+	private GradientPaint renderedGradient = null;
+	/**
+	 * Snapshot the background and the lightning walls are drawn from, only touched by the thread that renders
+	 */
+	private RenderSnapshot drawnSnapshot = null;
+	/**
+	 * True if the color was changed since the last call to addDirtyArea, which changes the whole window
+	 */
+	private volatile boolean colorChanged = false;
 	
 	/**
-	 * Initializes all fields, instantiates all edge areas, instantiates all lightning walls, and calls setColor
+	 * Initializes all fields, instantiates all edge boxes, instantiates all lightning walls, and calls setColor
 	 * @param startingPosition Expressed compared to window scale (0..1, 0..1)
 	 * @param baseColor Affects lightning wall and out-of-bounds area colors
 	 */
@@ -52,31 +74,27 @@ public class Bounds implements SceneObject, Collidable {
 		 * 1 - ceiling,
 		 * 2 - left edge
 		 */
-		Rectangle2D[] edgeRectangles = new Rectangle2D[3];
-		edgeRectangles[0] = new Rectangle2D.Double(
+		this.edgeBoxes = new Box[3];
+		this.edgeBoxes[0] = new Box(
 				1 - startingPosition,
 				startingPosition,
 				startingPosition,
 				1 - startingPosition
 		);
-		edgeRectangles[1] = new Rectangle2D.Double(
+		this.edgeBoxes[1] = new Box(
 				0,
 				0,
 				1,
 				startingPosition
 		);
-		edgeRectangles[2] = new Rectangle2D.Double(
+		this.edgeBoxes[2] = new Box(
 				0,
 				startingPosition,
 				startingPosition,
 				1 - startingPosition
 		);
-		this.edgeAreas = new Area[3];
-		for (int i = 0; i < 3; i += 1) {
-			this.edgeAreas[i] = new Area(edgeRectangles[i]);
-		}
 		
-		this.intersection = new Area();
+		this.impact = new Impact();
 		
 		/*
 		 * 0 - far left,
@@ -84,7 +102,7 @@ public class Bounds implements SceneObject, Collidable {
 		 * 2 - mid right,
 		 * 3 - far right
 		 */
-		this.lightningWalls = new LightningWall[4];
+		this.lightningWalls = new LightningWall[Bounds.LIGHTNING_WALL_COUNT];
 		this.lightningWalls[0] = new LightningWall(
 				new Vector(0, startingPosition),
 				new Vector(startingPosition / 2, 1 - 2 * startingPosition),
@@ -119,10 +137,87 @@ public class Bounds implements SceneObject, Collidable {
 	}
 	
 	/**
-	 * Draws out-of-bounds area, ceiling, sets anti-aliasing, draws the bulbs, and draws the lightning walls
+	 * Adds the whole window if the color changed, and otherwise the areas of the lightning walls that changed
+	 * @param region
+	 */
+	public void addDirtyArea(final DirtyRegion region) {
+		if (this.colorChanged) {
+			this.colorChanged = false;
+			region.add(0, 0, 1, 1);
+		}
+		for (LightningWall lightningWall: this.lightningWalls) {
+			lightningWall.addDirtyArea(region);
+		}
+	}
+	
+	/**
+	 * Copies the gradient and the lightning walls into the snapshot,
+	 * called from the game thread at the end of every physics frame
+	 * @param snapshot
+	 */
+	public void saveSnapshot(final RenderSnapshot snapshot) {
+		snapshot.bottomGradient = this.bottomGradient;
+		for (int i = 0; i < this.lightningWalls.length; i += 1) {
+			this.lightningWalls[i].saveSnapshot(snapshot, i);
+		}
+	}
+	
+	/**
+	 * Sets the snapshot the background and the lightning walls are drawn from,
+	 * called from the thread that renders before drawing
+	 * @param snapshot
+	 */
+	public void setSnapshot(final RenderSnapshot snapshot) {
+		this.drawnSnapshot = snapshot;
+		for (int i = 0; i < this.lightningWalls.length; i += 1) {
+			this.lightningWalls[i].setSnapshot(snapshot, i);
+		}
+	}
+	
+	/**
+	 * Renders the background again if the gradient of the snapshot or device size changed, queues copying it,
+	 * and queues the lightning walls in a single layer
 	 * @param g2d
+	 * @param queue
+	 */
+	public void draw(final Graphics2D g2d, final RenderQueue queue) {
+		RenderSnapshot snapshot = this.drawnSnapshot;
+		AffineTransform oldTransform = g2d.getTransform();
+		int width = (int) Math.round(oldTransform.getScaleX()),
+				height = (int) Math.round(oldTransform.getScaleY());
+		if (snapshot == null || width <= 0 || height <= 0) {
+			return;
+		}
+		if (snapshot.bottomGradient != this.renderedGradient || this.background == null ||
+				this.background.getWidth() != width || this.background.getHeight() != height) {
+			this.renderedGradient = snapshot.bottomGradient;
+			this.renderBackground(width, height);
+		}
+		
+		queue.beginLayer();
+		queue.image(this.background, oldTransform.getTranslateX(), oldTransform.getTranslateY(), 0, 0, width, height);
+		
+		queue.beginLayer();
+		for (LightningWall lightningWall: this.lightningWalls) {
+			lightningWall.draw(g2d, queue);
+		}
+	}
+	
+	/**
+	 * Creates the background image if its size changed, clears it,
+	 * and draws out-of-bounds area, ceiling, sets anti-aliasing, and draws the bulbs
+	 * @param width Device width in pixels
+	 * @param height Device height in pixels
 	 */
-	public void draw(final Graphics2D g2d) {
+	private void renderBackground(final int width, final int height) {
+		if (this.background == null || this.background.getWidth() != width || this.background.getHeight() != height) {
+			this.background = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		Graphics2D g2d = this.background.createGraphics();
+		g2d.setComposite(AlphaComposite.Clear);
+		g2d.fillRect(0, 0, width, height);
+		g2d.setComposite(AlphaComposite.SrcOver);
+		g2d.scale(width, height);
 		g2d.setStroke(Bounds.HAIRLINE_STROKE);
 		
 		AffineTransform oldTransform = g2d.getTransform();
@@ -131,7 +226,7 @@ public class Bounds implements SceneObject, Collidable {
 		
 		g2d.translate(0, 1 - startingPosition.getY());
 		g2d.scale(1, startingPosition.getY());
-		g2d.setPaint(this.bottomGradient);
+		g2d.setPaint(this.renderedGradient);
 		g2d.fill(Bounds.BOTTOM_RECTANGLE);
 		
 		g2d.setTransform(oldTransform);
@@ -153,7 +248,7 @@ public class Bounds implements SceneObject, Collidable {
 		g2d.scale(startingPosition.getX(), startingPosition.getY());
 		g2d.setPaint(Bounds.DIAGONAL_GRADIENT);
 		g2d.fill(Bounds.CORNER_ORB);
-
+		
 		g2d.setTransform(oldTransform);
 		
 		// Top right bulb
@@ -181,56 +276,48 @@ public class Bounds implements SceneObject, Collidable {
 		g2d.setTransform(oldTransform);
 		
 		g2d.setRenderingHints(oldHints);
-
-		for (LightningWall lightningWall: this.lightningWalls) {
-			lightningWall.draw(g2d);
-		}
-	
-		g2d.setTransform(oldTransform);
+		
+		g2d.dispose();
 	}
 	
 	/**
-	 * Check if ball is colliding with the ceiling or an edge
+	 * Sweeps the ball against the ceiling and both edges, using the index of the edge as the contact index
 	 * @param ball
 	 */
-	public void testCollision(final Area ball) throws Collision {
-		for (int i = 0; i < this.edgeAreas.length; i += 1) {
-			this.intersection.reset();
-			this.intersection.add(ball);
-			this.intersection.intersect(this.edgeAreas[i]);
-			if (this.intersection.isEmpty()) {
-				continue;
-			}
-			Vector nVector = null;
-			switch (i) {
-			case 0:
-				// Right edge
-				SoundManager.getInstance().play("lightning.wav");
-				nVector = Vector.MINUS_X_UNIT;
-				break;
-			case 1:
-				// Ceiling
-				SoundManager.getInstance().play("ceiling.wav");
-				nVector = Vector.Y_UNIT;
-				break;
-			case 2:
-				// Left edge
-				SoundManager.getInstance().play("lightning.wav");
-				nVector = Vector.X_UNIT;
-				break;
-			}
-			if (nVector != null) {
-				throw new Collision(nVector);
+	public void testSweep(final Circle ball, final double dx, final double dy, final ContactManifold manifold) {
+		for (int i = 0; i < this.edgeBoxes.length; i += 1) {
+			if (this.edgeBoxes[i].sweep(ball, dx, dy, this.impact)) {
+				manifold.add(this.impact, this, i);
 			}
 		}
 	}
 	
 	/**
-	 * Sets out-of-bounds area color and lightning wall color based on baseColor
+	 * Plays the sound of the hit ceiling or edge
+	 * @param manifold
+	 * @param contact
+	 */
+	public void collide(final ContactManifold manifold, final int contact) {
+		switch (manifold.getIndex(contact)) {
+		case 0: case 2:
+			// Right or left edge
+			SoundManager.getInstance().play("lightning.wav");
+			break;
+		case 1:
+			// Ceiling
+			SoundManager.getInstance().play("ceiling.wav");
+			break;
+		}
+	}
+	
+	/**
+	 * Sets out-of-bounds area color and lightning wall color based on baseColor,
+	 * and invalidates the whole window. The background is rendered again once a snapshot with the new gradient is drawn.
 	 * @param baseColor
 	 */
 	public void setColor(final Color baseColor) {
 		this.bottomGradient = new GradientPaint(0, 0, baseColor.darker().darker().darker(), 0, 1, Color.black);
+		this.colorChanged = true;
 		
 		for (LightningWall lightningWall: this.lightningWalls) {
 			lightningWall.setColor(baseColor);
@@ -242,13 +329,7 @@ public class Bounds implements SceneObject, Collidable {
 	 * @param ball
 	 * @return True if ball is out-of-bounds, otherwise false
 	 */
-	public boolean isOutOfBounds(final Area ball) {
-		this.intersection.reset();
-		this.intersection.add(ball);
-		this.intersection.intersect(Bounds.BOUNDS_AREA);
-		if (this.intersection.isEmpty()) {
-			return true;
-		}
-		return false;
+	public boolean isOutOfBounds(final Circle ball) {
+		return !Bounds.BOUNDS_BOX.intersects(ball);
 	}
 }
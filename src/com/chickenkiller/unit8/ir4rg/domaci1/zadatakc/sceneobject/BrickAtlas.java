@@ -0,0 +1,137 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Pre-rasterized brick sprites at the current brick size in device pixels.
+ * Sprites are laid out in strips, one strip per brick look, with one sprite per step of its animation.
+ * Strips are allocated, and sprites rasterized, the first time they are needed,
+ * and all of them are dropped whenever the brick size changes.
+ */
+public class BrickAtlas {
+	/**
+	 * Empty pixels around each sprite, so that strokes and antialiasing are not cut off
+	 */
+	private static final int PADDING = 1;
+	
+	private final int stripCount;
+	private final int spritesPerStrip;
+	private final BufferedImage[] strips;
+	private final boolean[] rendered;
+	/**
+	 * Identity transform, used to blit sprites in device pixels
+	 */
+	private final AffineTransform blitTransform;
+	
+	/**
+	 * Brick size in device pixels
+	 */
+	private double brickWidth = 0;
+	private double brickHeight = 0;
+	/**
+	 * Sprite size in device pixels, including padding
+	 */
+	private int spriteWidth = 0;
+	private int spriteHeight = 0;
+	
+	/**
+	 * @param stripCount Number of brick looks
+	 * @param spritesPerStrip Number of animation steps of each look
+	 */
+	public BrickAtlas(final int stripCount, final int spritesPerStrip) {
+		this.stripCount = stripCount;
+		this.spritesPerStrip = spritesPerStrip;
+		this.strips = new BufferedImage[stripCount];
+		this.rendered = new boolean[stripCount * spritesPerStrip];
+		this.blitTransform = new AffineTransform();
+	}
+	
+	/**
+	 * Drops all sprites if the brick size in device pixels changed
+	 * @param width Brick width in device pixels
+	 * @param height Brick height in device pixels
+	 */
+	public void setBrickSize(final double width, final double height) {
+		if (width == this.brickWidth && height == this.brickHeight) {
+			return;
+		}
+		this.brickWidth = width;
+		this.brickHeight = height;
+		this.spriteWidth = (int) Math.ceil(width) + 2 * BrickAtlas.PADDING;
+		this.spriteHeight = (int) Math.ceil(height) + 2 * BrickAtlas.PADDING;
+		for (int strip = 0; strip < this.stripCount; strip += 1) {
+			this.strips[strip] = null;
+		}
+		for (int sprite = 0; sprite < this.rendered.length; sprite += 1) {
+			this.rendered[sprite] = false;
+		}
+	}
+	
+	public boolean isRendered(final int strip, final int step) {
+		return this.rendered[strip * this.spritesPerStrip + step];
+	}
+	
+	/**
+	 * Allocates the strip if necessary, and marks the sprite as rendered
+	 * @return Graphics clipped to the sprite, scaled so that the brick is (0..1, 0..1), to be disposed by the caller
+	 */
+	public Graphics2D createSpriteGraphics(final int strip, final int step) {
+		if (this.strips[strip] == null) {
+			this.strips[strip] = new BufferedImage(
+					this.spriteWidth * this.spritesPerStrip,
+					this.spriteHeight,
+					BufferedImage.TYPE_INT_ARGB_PRE
+			);
+		}
+		this.rendered[strip * this.spritesPerStrip + step] = true;
+		Graphics2D spriteG2d = this.strips[strip].createGraphics();
+		spriteG2d.clipRect(step * this.spriteWidth, 0, this.spriteWidth, this.spriteHeight);
+		spriteG2d.translate(step * this.spriteWidth + BrickAtlas.PADDING, BrickAtlas.PADDING);
+		spriteG2d.scale(this.brickWidth, this.brickHeight);
+		spriteG2d.setRenderingHint(
+				RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		return spriteG2d;
+	}
+	
+	/**
+	 * Copies the sprite to the device, with the top left corner of the brick at the nearest pixel to (x, y)
+	 * @param g2d Graphics scaled to window scale (0..1, 0..1)
+	 * @param oldTransform Current transform of g2d, restored after the blit
+	 * @param x Expressed compared to window scale (0..1)
+	 * @param y Expressed compared to window scale (0..1)
+	 */
+	public void blit(final Graphics2D g2d, final AffineTransform oldTransform, final int strip, final int step,
+			final double x, final double y) {
+		int pixelX = (int) Math.round(oldTransform.getScaleX() * x + oldTransform.getTranslateX()) - BrickAtlas.PADDING,
+				pixelY = (int) Math.round(oldTransform.getScaleY() * y + oldTransform.getTranslateY()) - BrickAtlas.PADDING,
+				spriteX = step * this.spriteWidth;
+		g2d.setTransform(this.blitTransform);
+		g2d.drawImage(
+				this.strips[strip],
+				pixelX, pixelY, pixelX + this.spriteWidth, pixelY + this.spriteHeight,
+				spriteX, 0, spriteX + this.spriteWidth, this.spriteHeight,
+				null
+		);
+		g2d.setTransform(oldTransform);
+	}
+	
+	/**
+	 * Queues copying the sprite, same as blit does
+	 * @param queue
+	 * @param transform Transform of the graphics the queue is run against, scaled to window scale (0..1, 0..1)
+	 * @param x Expressed compared to window scale (0..1)
+	 * @param y Expressed compared to window scale (0..1)
+	 */
+	public void queue(final RenderQueue queue, final AffineTransform transform, final int strip, final int step,
+			final double x, final double y) {
+		queue.image(
+				this.strips[strip],
+				Math.round(transform.getScaleX() * x + transform.getTranslateX()) - BrickAtlas.PADDING,
+				Math.round(transform.getScaleY() * y + transform.getTranslateY()) - BrickAtlas.PADDING,
+				step * this.spriteWidth, 0, this.spriteWidth, this.spriteHeight
+		);
+	}
+}
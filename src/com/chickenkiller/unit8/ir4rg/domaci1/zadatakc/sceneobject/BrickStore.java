@@ -0,0 +1,572 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.GameState;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Polygon;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
+
+/**
+ * All bricks of a wall, kept in parallel primitive arrays instead of one object per brick.
+ * Each brick occupies the same index in all arrays.
+ * Brick colors are not stored, since they only depend on the color number, the number of hits taken,
+ * and the fade timer, so they are looked up in tables shared by all bricks.
+ * Bricks that are neither fading nor moving are cached by a WallLayer,
+ * so every brick that starts or stops fading is reported to it as dirty, along with the look it is cached with.
+ * The thread that renders never reads the arrays changed by the game thread.
+ * It draws the cached bricks from the looks it drained with the dirty set,
+ * and the fading and moving bricks from the snapshot.
+ */
+public class BrickStore {
+	private static final BasicStroke MEDIUM_STROKE = new BasicStroke(0.01f);
+	/**
+	 * Brick fade time in milliseconds
+	 */
+	private static final int FADE_LENGTH = 400;
+	private static final Rectangle2D BACK_RECTANGLE = new Rectangle2D.Double(0, 0, 1, 1);
+	private static final Polygon TOP_TRIANGLE = new Polygon(new double[]{0, 0, 1}, new double[]{0, 1, 0});
+	private static final Line2D DIAGONAL_LINE = new Line2D.Double(0.0, 0.0, 1.0, 1.0);
+	private static final Rectangle2D CENTRAL_RECTANGLE = new Rectangle2D.Double(0.2, 0.2, 0.6, 0.6);
+	private static final int COLOR_COUNT = 8;
+	/**
+	 * Highest durability a brick can have, and therefore the number of damage levels
+	 */
+	private static final int MAX_DURABILITY = 8;
+	/**
+	 * Number of steps the fade animation is quantized to, each of which gets its own sprite
+	 */
+	private static final int FADE_STEPS = 16;
+	/**
+	 * Number of brick looks, one for each [colorNum][damage][broken]
+	 */
+	private static final int LOOK_COUNT = BrickStore.COLOR_COUNT * BrickStore.MAX_DURABILITY * 2;
+	/*
+	 * Colors and gradients of bricks that are not fading, indexed by [colorNum][damage],
+	 * where damage is the number of hits taken.
+	 * Base colors start as the 3-bit RGB color at 0.7 alpha, lighter colors start as white,
+	 * and both get darker with each hit.
+	 */
+	private static final Color[][] BASE_COLORS = new Color[BrickStore.COLOR_COUNT][BrickStore.MAX_DURABILITY];
+	private static final Color[][] LIGHTER_COLORS = new Color[BrickStore.COLOR_COUNT][BrickStore.MAX_DURABILITY];
+	private static final GradientPaint[][] GRADIENTS = new GradientPaint[BrickStore.COLOR_COUNT][BrickStore.MAX_DURABILITY];
+	/*
+	 * Color ramps of fading bricks, indexed by [look][fade step], blended at the middle of each step.
+	 * Looks that never fade, damage level zero of unbroken bricks, are left empty.
+	 */
+	private static final Color[][] FADE_BASE_COLORS = new Color[BrickStore.LOOK_COUNT][BrickStore.FADE_STEPS];
+	private static final Color[][] FADE_LIGHTER_COLORS = new Color[BrickStore.LOOK_COUNT][BrickStore.FADE_STEPS];
+	private static final GradientPaint[][] FADE_GRADIENTS = new GradientPaint[BrickStore.LOOK_COUNT][BrickStore.FADE_STEPS];
+	static {
+		for (int colorNum = 0; colorNum < BrickStore.COLOR_COUNT; colorNum += 1) {
+			Color baseColor = new Color(
+					(float) (colorNum >> 2),
+					(float) ((colorNum >> 1) & 1),
+					(float) (colorNum & 1),
+					0.7f
+			);
+			Color lighterColor = Color.WHITE;
+			for (int damage = 0; damage < BrickStore.MAX_DURABILITY; damage += 1) {
+				BrickStore.BASE_COLORS[colorNum][damage] = baseColor;
+				BrickStore.LIGHTER_COLORS[colorNum][damage] = lighterColor;
+				BrickStore.GRADIENTS[colorNum][damage] = new GradientPaint(0, 0, lighterColor, 1, 1, baseColor);
+				baseColor = baseColor.darker();
+				lighterColor = lighterColor.darker();
+			}
+		}
+		for (int look = 0; look < BrickStore.LOOK_COUNT; look += 1) {
+			int colorNum = look / 2 / BrickStore.MAX_DURABILITY,
+					damage = look / 2 % BrickStore.MAX_DURABILITY;
+			boolean broken = look % 2 == 1;
+			if (!broken && damage == 0) {
+				continue;
+			}
+			for (int step = 0; step < BrickStore.FADE_STEPS; step += 1) {
+				double blendLevel = (step + 0.5) / BrickStore.FADE_STEPS;
+				Color baseColor = new Color(
+						BrickStore.getFadeArgb(BrickStore.BASE_COLORS, colorNum, damage, broken, blendLevel),
+						true
+				);
+				Color lighterColor = new Color(
+						BrickStore.getFadeArgb(BrickStore.LIGHTER_COLORS, colorNum, damage, broken, blendLevel),
+						true
+				);
+				BrickStore.FADE_BASE_COLORS[look][step] = baseColor;
+				BrickStore.FADE_LIGHTER_COLORS[look][step] = lighterColor;
+				BrickStore.FADE_GRADIENTS[look][step] = new GradientPaint(0, 0, lighterColor, 1, 1, baseColor);
+			}
+		}
+	}
+	
+	private final Vector scale;
+	/**
+	 * Sprites of every brick look, one strip per look,
+	 * with the steady sprite followed by FADE_STEPS fading sprites
+	 */
+	private final BrickAtlas atlas;
+	/**
+	 * Top left corner of each brick, expressed compared to window scale (0..1, 0..1)
+	 */
+	private final double[] x;
+	private final double[] y;
+	/**
+	 * Number of hits left to break each brick, or 0 for invincible bricks
+	 */
+	private final byte[] durability;
+	/**
+	 * Number (0..7) 3-bit representation of RGB color of each brick
+	 */
+	private final byte[] colorNum;
+	/**
+	 * Number of hits each brick has taken without breaking
+	 */
+	private final byte[] damage;
+	private final boolean[] broken;
+	/**
+	 * Milliseconds left in the fade animation of each brick, or 0 if it is not fading
+	 */
+	private final int[] fadeTime;
+	/**
+	 * Indexes of the bricks that are currently fading, the first fadingCount of which are valid
+	 */
+	private final int[] fading;
+	/**
+	 * Bricks that are moved every frame, and therefore always drawn directly instead of cached
+	 */
+	private final boolean[] moving;
+	/**
+	 * Indexes of the moving bricks, the first movingCount of which are valid
+	 */
+	private final int[] movingBricks;
+	/**
+	 * Indexes of the bricks saved by saveSnapshot, only touched by the game thread
+	 */
+	private final int[] uncached;
+	/**
+	 * Indexes of bricks whose cached image changed, the first dirtyCount of which are valid.
+	 * Filled by the update thread and drained by the drawing thread, so guarded by its own lock.
+	 */
+	private final int[] dirty;
+	private final boolean[] isDirty;
+	/**
+	 * Look each brick is cached with, or -1 if it is not cached, guarded by the lock of dirty
+	 */
+	private final int[] pendingLook;
+	/**
+	 * Look each brick is cached with as of the last call to drainDirty, only touched by the thread that renders
+	 */
+	private final int[] cachedLook;
+	/**
+	 * Indexes of bricks that stopped fading since the last call to addDirtyArea,
+	 * the first stoppedCount of which are valid
+	 */
+	private final int[] stopped;
+	private final boolean[] isStopped;
+	
+	private int count = 0;
+	private int fadingCount = 0;
+	private int movingCount = 0;
+	private int dirtyCount = 0;
+	private int stoppedCount = 0;
+	/**
+	 * Total unbroken bricks, updated whenever a brick breaks
+	 */
+	private int remaining = 0;
+	
+	/**
+	 * Allocates the arrays for the given number of bricks
+	 * @param capacity Maximum number of bricks
+	 * @param scale Size of every brick, expressed compared to window scale (0..1, 0..1)
+	 */
+	public BrickStore(final int capacity, final Vector scale) {
+		this.scale = scale;
+		this.atlas = new BrickAtlas(BrickStore.LOOK_COUNT, 1 + BrickStore.FADE_STEPS);
+		this.x = new double[capacity];
+		this.y = new double[capacity];
+		this.durability = new byte[capacity];
+		this.colorNum = new byte[capacity];
+		this.damage = new byte[capacity];
+		this.broken = new boolean[capacity];
+		this.fadeTime = new int[capacity];
+		this.fading = new int[capacity];
+		this.moving = new boolean[capacity];
+		this.movingBricks = new int[capacity];
+		this.uncached = new int[capacity];
+		this.dirty = new int[capacity];
+		this.isDirty = new boolean[capacity];
+		this.pendingLook = new int[capacity];
+		this.cachedLook = new int[capacity];
+		this.stopped = new int[capacity];
+		this.isStopped = new boolean[capacity];
+	}
+	
+	/**
+	 * Adds a brick, randomizing its color if necessary
+	 * @param position Expressed compared to window scale (0..1, 0..1)
+	 * @param durability Number (1..8) of hits to break block, or 0 for invincible brick
+	 * @param colorNum Number (0..7) 3-bit representation of RGB color, or 8 for random color
+	 * @return Index of the new brick
+	 */
+	public int add(final Vector position, final int durability, int colorNum) {
+		if (colorNum == BrickStore.COLOR_COUNT) {
+			colorNum = (int)(new Random().nextDouble() * BrickStore.COLOR_COUNT);
+		}
+		int i = this.count;
+		this.x[i] = position.getX();
+		this.y[i] = position.getY();
+		this.durability[i] = (byte) durability;
+		this.colorNum[i] = (byte) colorNum;
+		this.pendingLook[i] = this.cachedLook[i] = this.getLook(i);
+		this.count += 1;
+		this.remaining += 1;
+		return i;
+	}
+	
+	/**
+	 * For every fading brick, lowers the fadeTime counter,
+	 * and removes the brick from the fading set once it reaches zero
+	 */
+	public void update(final double deltaTime) {
+		for (int k = 0; k < this.fadingCount; k += 1) {
+			int i = this.fading[k];
+			this.fadeTime[i] = (int) Math.max(this.fadeTime[i] - deltaTime, 0);
+			if (this.fadeTime[i] == 0) {
+				// Move the last fading brick in its place, and check that one next
+				this.fadingCount -= 1;
+				this.fading[k] = this.fading[this.fadingCount];
+				k -= 1;
+				this.markDirty(i);
+				if (!this.isStopped[i]) {
+					this.isStopped[i] = true;
+					this.stopped[this.stoppedCount] = i;
+					this.stoppedCount += 1;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds the area of every fading brick, and of every brick that stopped fading since the last call
+	 * @param region
+	 */
+	public void addDirtyArea(final DirtyRegion region) {
+		for (int k = 0; k < this.fadingCount; k += 1) {
+			this.addDrawnArea(region, this.fading[k]);
+		}
+		for (int k = 0; k < this.stoppedCount; k += 1) {
+			this.addDrawnArea(region, this.stopped[k]);
+			this.isStopped[this.stopped[k]] = false;
+		}
+		this.stoppedCount = 0;
+	}
+	
+	/**
+	 * Adds the area the brick is drawn in at its current position, including half of the stroke
+	 * @param region
+	 * @param i Index of the brick
+	 */
+	public void addDrawnArea(final DirtyRegion region, final int i) {
+		double halfStrokeX = 0.5 * BrickStore.MEDIUM_STROKE.getLineWidth() * this.scale.getX(),
+				halfStrokeY = 0.5 * BrickStore.MEDIUM_STROKE.getLineWidth() * this.scale.getY();
+		region.add(
+				this.x[i] - halfStrokeX,
+				this.y[i] - halfStrokeY,
+				this.scale.getX() + 2 * halfStrokeX,
+				this.scale.getY() + 2 * halfStrokeY
+		);
+	}
+	
+	/**
+	 * Copies every fading brick, and every moving brick that is not broken and faded, into the snapshot,
+	 * leaving the rest to the cache. Called from the game thread at the end of every physics frame.
+	 * Only the fading and the moving sets are visited, and the bricks are saved in index order,
+	 * so that the strokes of neighbouring bricks always overlap the same way.
+	 * @param snapshot
+	 */
+	public void saveSnapshot(final RenderSnapshot snapshot) {
+		int uncachedCount = 0;
+		for (int k = 0; k < this.fadingCount; k += 1) {
+			// Fading bricks that are also moving are added below
+			if (!this.moving[this.fading[k]]) {
+				this.uncached[uncachedCount] = this.fading[k];
+				uncachedCount += 1;
+			}
+		}
+		for (int k = 0; k < this.movingCount; k += 1) {
+			int i = this.movingBricks[k];
+			if (!(this.broken[i] && this.fadeTime[i] == 0)) {
+				this.uncached[uncachedCount] = i;
+				uncachedCount += 1;
+			}
+		}
+		Arrays.sort(this.uncached, 0, uncachedCount);
+		if (snapshot.brickX.length < uncachedCount) {
+			snapshot.brickX = new double[this.uncached.length];
+			snapshot.brickY = new double[this.uncached.length];
+			snapshot.brickLook = new int[this.uncached.length];
+			snapshot.brickStep = new int[this.uncached.length];
+		}
+		for (int k = 0; k < uncachedCount; k += 1) {
+			int i = this.uncached[k];
+			snapshot.brickX[k] = this.x[i];
+			snapshot.brickY[k] = this.y[i];
+			snapshot.brickLook[k] = this.getLook(i);
+			snapshot.brickStep[k] = this.getStep(i);
+		}
+		snapshot.brickCount = uncachedCount;
+	}
+	
+	/**
+	 * Queues copying the sprite of every brick of the snapshot, rasterizing it first if necessary
+	 * @param g2d Graphics scaled to window scale (0..1, 0..1), that the queue will be run against
+	 * @param queue
+	 * @param snapshot
+	 */
+	public void drawUncached(final Graphics2D g2d, final RenderQueue queue, final RenderSnapshot snapshot) {
+		AffineTransform transform = g2d.getTransform();
+		for (int k = 0; k < snapshot.brickCount; k += 1) {
+			this.prepareSprite(transform, snapshot.brickLook[k], snapshot.brickStep[k]);
+			this.atlas.queue(
+					queue,
+					transform,
+					snapshot.brickLook[k],
+					snapshot.brickStep[k],
+					snapshot.brickX[k],
+					snapshot.brickY[k]
+			);
+		}
+	}
+	
+	/**
+	 * Copies the indexes of dirty bricks, takes the looks they are cached with, and clears the dirty set
+	 * @param into Array of at least capacity length
+	 * @return Number of indexes copied
+	 */
+	public int drainDirty(final int[] into) {
+		synchronized (this.dirty) {
+			int drained = this.dirtyCount;
+			for (int k = 0; k < drained; k += 1) {
+				into[k] = this.dirty[k];
+				this.isDirty[this.dirty[k]] = false;
+				this.cachedLook[this.dirty[k]] = this.pendingLook[this.dirty[k]];
+			}
+			this.dirtyCount = 0;
+			return drained;
+		}
+	}
+	
+	/**
+	 * Durability zero means brick is invincible so do nothing.
+	 * Otherwise either break the brick, or weaken and darken it.
+	 * If animation is turned off, fade should be instant.
+	 * @param i Index of the brick
+	 */
+	public void collide(final int i) {
+		if (this.durability[i] == 0) {
+			return;
+		}
+		
+		boolean startedFading = this.fadeTime[i] == 0;
+		if (startedFading) {
+			this.fading[this.fadingCount] = i;
+			this.fadingCount += 1;
+		}
+		if (GameState.getInstance().isAnimationOff()) {
+			this.fadeTime[i] = 1;
+		} else {
+			this.fadeTime[i] = BrickStore.FADE_LENGTH;
+		}
+		
+		if (this.durability[i] == 1) {
+			this.broken[i] = true;
+			this.remaining -= 1;
+		} else {
+			this.durability[i] -= 1;
+			this.damage[i] += 1;
+		}
+		if (startedFading) {
+			this.markDirty(i);
+		}
+	}
+	
+	/**
+	 * Marks the brick as moving, so that it is always drawn directly instead of cached.
+	 * Called while the wall is built, before it is drawn, so the brick is never cached and needs no redraw.
+	 * @param i Index of the brick
+	 */
+	public void setMoving(final int i) {
+		if (this.moving[i]) {
+			return;
+		}
+		this.moving[i] = true;
+		this.movingBricks[this.movingCount] = i;
+		this.movingCount += 1;
+		this.pendingLook[i] = this.cachedLook[i] = -1;
+	}
+	
+	/**
+	 * Called from the thread that renders
+	 * @param i Index of the brick
+	 * @return True if the brick was cached as of the last call to drainDirty, otherwise false
+	 */
+	public boolean isDrawnCached(final int i) {
+		return this.cachedLook[i] != -1;
+	}
+	
+	public void setX(final int i, final double x) { this.x[i] = x; }
+	public double getX(final int i) { return this.x[i]; }
+	public double getY(final int i) { return this.y[i]; }
+	public boolean isBroken(final int i) { return this.broken[i]; }
+	public boolean isInvincible(final int i) { return this.durability[i] == 0; }
+	public int getCount() { return this.count; }
+	public int getRemaining() { return this.remaining; }
+	
+	/**
+	 * Blits the steady sprite of the look the brick is cached with, rasterizing it first if necessary.
+	 * Called from the thread that renders, only for bricks that are cached, which never move.
+	 * @param g2d Graphics scaled to window scale (0..1, 0..1)
+	 * @param i Index of the brick
+	 */
+	public void drawCached(final Graphics2D g2d, final int i) {
+		AffineTransform transform = g2d.getTransform();
+		int look = this.cachedLook[i];
+		this.prepareSprite(transform, look, 0);
+		this.atlas.blit(g2d, transform, look, 0, this.x[i], this.y[i]);
+	}
+	
+	/**
+	 * @param i Index of the brick
+	 * @return True if the brick is drawn by the cache, otherwise false
+	 */
+	private boolean isCached(final int i) {
+		return this.fadeTime[i] == 0 && !this.moving[i] && !this.broken[i];
+	}
+	
+	/**
+	 * @param i Index of the brick
+	 * @return Index of the current look of the brick, as in the fade tables
+	 */
+	private int getLook(final int i) {
+		return (this.colorNum[i] * BrickStore.MAX_DURABILITY + this.damage[i]) * 2 + (this.broken[i] ? 1 : 0);
+	}
+	
+	/**
+	 * @param i Index of the brick
+	 * @return Step of the fade animation, 1..FADE_STEPS, or 0 if the brick is not fading
+	 */
+	private int getStep(final int i) {
+		if (this.fadeTime[i] == 0) {
+			return 0;
+		}
+		double blendLevel = 1 - 1.0 * this.fadeTime[i] / BrickStore.FADE_LENGTH;
+		return 1 + Math.min((int) (blendLevel * BrickStore.FADE_STEPS), BrickStore.FADE_STEPS - 1);
+	}
+	
+	/**
+	 * Sets the brick size of the atlas to the size in device pixels, and rasterizes the sprite if necessary
+	 * @param transform Transform of the graphics scaled to window scale (0..1, 0..1)
+	 */
+	private void prepareSprite(final AffineTransform transform, final int look, final int step) {
+		this.atlas.setBrickSize(
+				transform.getScaleX() * this.scale.getX(),
+				transform.getScaleY() * this.scale.getY()
+		);
+		if (!this.atlas.isRendered(look, step)) {
+			this.rasterize(look, step);
+		}
+	}
+	
+	/**
+	 * Updates the look the brick is cached with, and adds the brick to the dirty set, unless it is already there.
+	 * Moving bricks are never cached, so they are skipped, and the thread that renders never reads their positions.
+	 * @param i Index of the brick
+	 */
+	private void markDirty(final int i) {
+		if (this.moving[i]) {
+			return;
+		}
+		synchronized (this.dirty) {
+			this.pendingLook[i] = this.isCached(i) ? this.getLook(i) : -1;
+			if (!this.isDirty[i]) {
+				this.isDirty[i] = true;
+				this.dirty[this.dirtyCount] = i;
+				this.dirtyCount += 1;
+			}
+		}
+	}
+	
+	/**
+	 * Looks up the colors of the look, and draws top and bottom triangle,
+	 * diagonal line, and central rectangle into its sprite
+	 * @param look Index of the look, as in the fade tables
+	 * @param step 0 for the steady sprite, otherwise fade step plus one
+	 */
+	private void rasterize(final int look, final int step) {
+		Color baseColor, lighterColor;
+		Paint colorGradient;
+		if (step == 0) {
+			int colorNum = look / 2 / BrickStore.MAX_DURABILITY,
+					damage = look / 2 % BrickStore.MAX_DURABILITY;
+			baseColor = BrickStore.BASE_COLORS[colorNum][damage];
+			lighterColor = BrickStore.LIGHTER_COLORS[colorNum][damage];
+			colorGradient = BrickStore.GRADIENTS[colorNum][damage];
+		} else {
+			baseColor = BrickStore.FADE_BASE_COLORS[look][step - 1];
+			lighterColor = BrickStore.FADE_LIGHTER_COLORS[look][step - 1];
+			colorGradient = BrickStore.FADE_GRADIENTS[look][step - 1];
+		}
+		
+		Graphics2D g2d = this.atlas.createSpriteGraphics(look, step);
+		g2d.setStroke(BrickStore.MEDIUM_STROKE);
+		
+		g2d.setPaint(baseColor);
+		g2d.fill(BrickStore.BACK_RECTANGLE);
+		g2d.setPaint(Color.black);
+		g2d.draw(BrickStore.BACK_RECTANGLE);
+		
+		g2d.setPaint(lighterColor);
+		g2d.fill(BrickStore.TOP_TRIANGLE);
+		g2d.setPaint(Color.black);
+		g2d.draw(BrickStore.TOP_TRIANGLE);
+		
+		g2d.setPaint(Color.black);
+		g2d.draw(BrickStore.DIAGONAL_LINE);
+		
+		g2d.setPaint(colorGradient);
+		g2d.fill(BrickStore.CENTRAL_RECTANGLE);
+		g2d.setPaint(Color.black);
+		g2d.draw(BrickStore.CENTRAL_RECTANGLE);
+		
+		g2d.dispose();
+	}
+	
+	/**
+	 * Blends the color of a fading brick.
+	 * A damaged brick fades from the fully opaque color of its previous damage level, to get a nice reactive effect,
+	 * to the color of its current damage level, to make it look damaged.
+	 * A broken brick fades from its fully opaque color to fully transparent, to make it disappear.
+	 * @param colors BASE_COLORS or LIGHTER_COLORS
+	 * @param colorNum
+	 * @param damage
+	 * @param broken
+	 * @param blendLevel Fraction (0..1) of the fade animation that has passed
+	 * @return The blended color, packed as ARGB
+	 */
+	private static int getFadeArgb(final Color[][] colors, final int colorNum, final int damage,
+			final boolean broken, final double blendLevel) {
+		int source = colors[colorNum][broken ? damage : damage - 1].getRGB(),
+				destination = colors[colorNum][damage].getRGB(),
+				destinationAlpha = broken ? 0 : destination >>> 24,
+				alpha = (int) (255 * (1 - blendLevel) + destinationAlpha * blendLevel),
+				argb = alpha << 24;
+		for (int shift = 0; shift < 24; shift += 8) {
+			int sourceChannel = (source >> shift) & 0xff,
+					destinationChannel = (destination >> shift) & 0xff;
+			argb |= ((int) (sourceChannel * (1 - blendLevel) + destinationChannel * blendLevel)) << shift;
+		}
+		return argb;
+	}
+}
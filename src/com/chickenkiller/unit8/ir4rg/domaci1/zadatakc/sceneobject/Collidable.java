@@ -1,9 +1,17 @@
 package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
 
-import java.awt.geom.Area;
-
-import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Collision;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Circle;
 
 public interface Collidable {
-	public void testCollision(final Area ballArea) throws Collision;
+	/**
+	 * Sweeps the ball along (dx, dy) and adds every impact to the manifold,
+	 * which keeps only the earliest ones
+	 */
+	public void testSweep(final Circle ball, final double dx, final double dy, final ContactManifold manifold);
+	/**
+	 * Applies the effects of a contact previously added to the manifold by testSweep
+	 * @param manifold
+	 * @param contact Index of the contact in the manifold
+	 */
+	public void collide(final ContactManifold manifold, final int contact);
 }
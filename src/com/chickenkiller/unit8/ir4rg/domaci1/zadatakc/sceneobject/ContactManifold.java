@@ -0,0 +1,156 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
+
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Impact;
+
+/**
+ * All contacts of the ball at its earliest impact in the current sub-step.
+ * Contacts are kept in preallocated arrays, and the manifold is reset instead of reallocated.
+ */
+public class ContactManifold {
+	public static final int MAX_CONTACTS = 16;
+	/**
+	 * Upper limit of impacts resolved for a single ball in a single physics frame.
+	 * If it is reached, the rest of the frame's ball movement is dropped instead of risking tunneling.
+	 */
+	public static final int MAX_IMPACTS_PER_FRAME = 8;
+	/**
+	 * Impacts closer in time than this, expressed as a fraction of the sweep, are considered simultaneous
+	 */
+	private static final double SIMULTANEOUS_TIME = 1e-9;
+	
+	/*
+	 * Contact store, each contact occupies the same index in all arrays
+	 */
+	private final double[] nX;
+	private final double[] nY;
+	private final double[] penetration;
+	private final Collidable[] sources;
+	/**
+	 * Collidable-specific index of the hit part, e.g. the edge of the bounds or the cell of the wall
+	 */
+	private final int[] indices;
+	
+	/**
+	 * Fraction (0..1) of the swept displacement at which the contacts happen
+	 */
+	private double time;
+	private int count;
+	
+	public ContactManifold() {
+		this.nX = new double[ContactManifold.MAX_CONTACTS];
+		this.nY = new double[ContactManifold.MAX_CONTACTS];
+		this.penetration = new double[ContactManifold.MAX_CONTACTS];
+		this.sources = new Collidable[ContactManifold.MAX_CONTACTS];
+		this.indices = new int[ContactManifold.MAX_CONTACTS];
+		this.reset();
+	}
+	
+	public void reset() {
+		this.time = Double.POSITIVE_INFINITY;
+		this.count = 0;
+	}
+	
+	/**
+	 * If the impact is earlier than the current contacts, replaces them with it.
+	 * If it is simultaneous with them, adds it to them. Otherwise ignores it.
+	 * @param impact
+	 * @param source Collidable that was hit
+	 * @param index Collidable-specific index of the hit part
+	 */
+	public void add(final Impact impact, final Collidable source, final int index) {
+		if (impact.getTime() < this.time - ContactManifold.SIMULTANEOUS_TIME) {
+			this.time = impact.getTime();
+			this.count = 0;
+		} else if (impact.getTime() > this.time + ContactManifold.SIMULTANEOUS_TIME) {
+			return;
+		}
+		if (this.count == ContactManifold.MAX_CONTACTS) {
+			return;
+		}
+		this.nX[this.count] = impact.getNX();
+		this.nY[this.count] = impact.getNY();
+		this.penetration[this.count] = impact.getPenetration();
+		this.sources[this.count] = source;
+		this.indices[this.count] = index;
+		this.count += 1;
+	}
+	
+	/**
+	 * Calls collide on the source of every contact
+	 */
+	public void collideSources() {
+		for (int i = 0; i < this.count; i += 1) {
+			this.sources[i].collide(this, i);
+		}
+	}
+	
+	public boolean isEmpty() {
+		return this.count == 0;
+	}
+	
+	public double getTime() { return this.time; }
+	public int getCount() { return this.count; }
+	public double getNX(final int contact) { return this.nX[contact]; }
+	public double getNY(final int contact) { return this.nY[contact]; }
+	public double getPenetration(final int contact) { return this.penetration[contact]; }
+	public int getIndex(final int contact) { return this.indices[contact]; }
+	public Collidable getSource(final int contact) { return this.sources[contact]; }
+	
+	/**
+	 * @return X of the displacement that pushes the ball out of every object it overlaps
+	 */
+	public double getPushX() {
+		double sum = 0;
+		for (int i = 0; i < this.count; i += 1) {
+			if (this.penetration[i] > 0) {
+				sum += this.nX[i] * this.penetration[i];
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * @return Y of the displacement that pushes the ball out of every object it overlaps
+	 */
+	public double getPushY() {
+		double sum = 0;
+		for (int i = 0; i < this.count; i += 1) {
+			if (this.penetration[i] > 0) {
+				sum += this.nY[i] * this.penetration[i];
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * Simple elastic collision along one axis, inverting the velocity if it points against the sum of normal vectors
+	 * @param velocity X or Y of the velocity of the ball
+	 * @param normalSum Same component of the sum of normal vectors of all contacts
+	 * @return Velocity after the collision
+	 */
+	public static double reflect(final double velocity, final double normalSum) {
+		return normalSum * velocity < 0 ? -velocity : velocity;
+	}
+	
+	/**
+	 * @return X component of the sum of normal vectors of all contacts
+	 */
+	public double getNormalSumX() {
+		double sum = 0;
+		for (int i = 0; i < this.count; i += 1) {
+			sum += this.nX[i];
+		}
+		return sum;
+	}
+	
+	/**
+	 * @return Y component of the sum of normal vectors of all contacts
+	 */
+	public double getNormalSumY() {
+		double sum = 0;
+		for (int i = 0; i < this.count; i += 1) {
+			sum += this.nY[i];
+		}
+		return sum;
+	}
+}
@@ -1,24 +1,104 @@
 package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
 
 import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
 import java.awt.geom.*;
-import java.text.DecimalFormat;
+import java.awt.image.BufferedImage;
 
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.GameState;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
 
+/**
+ * Pause, victory and game over menu, and the score.
+ * The menu panel with its title and instructions is rendered into an image at device resolution,
+ * which is only rendered again when the title or the device size changes.
+ * The score is drawn from glyph outlines laid out once, the label of each line and every character of a time,
+ * with the times formatted into a reused char buffer.
+ * Outlines are queued instead of the glyph vectors themselves, since glyph vectors cache their rendering state
+ * and must not be drawn from several threads at once.
+ */
 public class GameMenu implements SceneObject {
 	private static final BasicStroke HAIRLINE_STROKE = new BasicStroke(0);
-	private static final DecimalFormat DECIMAL_FORMAT = new DecimalFormat("#.#");
 	private static final Color BACKDROP_COLOR = new Color(0, 0, 0, 0.3f);
 	private static final Color MENU_COLOR = new Color(0, 0, 0, 0.7f);
 	private static final Rectangle2D RECTANGLE = new Rectangle2D.Double(0, 0, 1, 1);
 	private static final Font TITLE_FONT = new Font("Monospaced", Font.BOLD, 26);
 	private static final Font INTSTRUCTION_FONT = new Font("Monospaced", Font.BOLD, 12);
 	private static final Font SCORE_FONT = new Font("Monospaced", Font.BOLD, 14);
+	private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, false);
+	private static final String VICTORY_TITLE = "Victory!";
+	private static final String GAME_OVER_TITLE = "Defeat!";
+	private static final String PAUSED_TITLE = "Paused";
+	/**
+	 * Characters a formatted time can contain, in the order of TIME_GLYPHS
+	 */
+	private static final String TIME_CHARACTERS = "0123456789.";
+	/*
+	 * Glyphs, outlines and advances of the score labels, and of every character of a formatted time
+	 */
+	private static final GlyphVector[] LABEL_GLYPHS = new GlyphVector[] {
+			GameMenu.SCORE_FONT.createGlyphVector(GameMenu.FONT_RENDER_CONTEXT, "Current Time: "),
+			GameMenu.SCORE_FONT.createGlyphVector(GameMenu.FONT_RENDER_CONTEXT, "Previous Time: "),
+			GameMenu.SCORE_FONT.createGlyphVector(GameMenu.FONT_RENDER_CONTEXT, "Previous Victory: ")
+	};
+	private static final GlyphVector[] TIME_GLYPHS = new GlyphVector[GameMenu.TIME_CHARACTERS.length()];
+	private static final Shape[] LABEL_OUTLINES = new Shape[GameMenu.LABEL_GLYPHS.length];
+	private static final Shape[] TIME_OUTLINES = new Shape[GameMenu.TIME_CHARACTERS.length()];
+	private static final double[] LABEL_ADVANCES = new double[GameMenu.LABEL_GLYPHS.length];
+	private static final double[] TIME_ADVANCES = new double[GameMenu.TIME_CHARACTERS.length()];
+	/*
+	 * Top of the first line and bottom of the last line of the score, relative to the baseline of the first line
+	 */
+	private static final double SCORE_TOP = GameMenu.LABEL_GLYPHS[0].getLogicalBounds().getMinY();
+	private static final double SCORE_BOTTOM = 24 + GameMenu.LABEL_GLYPHS[0].getLogicalBounds().getMaxY();
+	static {
+		for (int i = 0; i < GameMenu.LABEL_GLYPHS.length; i += 1) {
+			GameMenu.LABEL_OUTLINES[i] = GameMenu.LABEL_GLYPHS[i].getOutline();
+			GameMenu.LABEL_ADVANCES[i] = GameMenu.LABEL_GLYPHS[i].getLogicalBounds().getWidth();
+		}
+		for (int i = 0; i < GameMenu.TIME_GLYPHS.length; i += 1) {
+			GameMenu.TIME_GLYPHS[i] = GameMenu.SCORE_FONT.createGlyphVector(
+					GameMenu.FONT_RENDER_CONTEXT,
+					GameMenu.TIME_CHARACTERS.substring(i, i + 1)
+			);
+			GameMenu.TIME_OUTLINES[i] = GameMenu.TIME_GLYPHS[i].getOutline();
+			GameMenu.TIME_ADVANCES[i] = GameMenu.TIME_GLYPHS[i].getLogicalBounds().getWidth();
+		}
+	}
 	
 	private final Vector position;
 	private final Vector scale;
+	/**
+	 * Reused for formatting each time of the score
+	 */
+	private final char[] timeBuffer;
+	/**
+	 * Reused for measuring each time of the score by addScoreArea, which is called from the update thread
+	 */
+	private final char[] measureBuffer;
+	
+	/**
+	 * Menu panel with title and instructions, one pixel larger than the panel to fit its border
+	 */
+	private BufferedImage menuImage = null;
+	/**
+	 * Title the menu image was rendered with
+	 */
+	private String menuImageTitle = null;
+	/**
+	 * Title at the last call to addDirtyArea, or null if the menu was hidden
+	 */
+	private String reportedTitle = null;
+	/**
+	 * Game time at the last call to addScoreArea
+	 */
+	private double reportedGameTime = -1;
+	/**
+	 * Snapshot the menu and the score are drawn from, only touched by the thread that renders
+	 */
+	private RenderSnapshot drawnSnapshot = null;
 	
 	/**
 	 * Initializes all fields
@@ -28,28 +108,192 @@ public class GameMenu implements SceneObject {
 	public GameMenu(final Vector position, final Vector scale) {
 		this.position = position;
 		this.scale = scale;
+		this.timeBuffer = new char[32];
+		this.measureBuffer = new char[32];
 	}
 	
 	public void update(final double deltaTime) {}
 	
 	/**
-	 * Renders backdrop, sets transformation matrix, renders menu, enables antiAliasing,
-	 * prints the instructions, and calls drawScore
-	 * @param g2d
+	 * Adds the whole window if the menu was shown, hidden, or got another title, since the backdrop covers it
+	 * @param region
 	 */
-	public void draw(final Graphics2D g2d) {
+	public void addDirtyArea(final DirtyRegion region) {
+		String menuTitle = GameMenu.getTitle(GameState.getInstance());
+		if (menuTitle != this.reportedTitle) {
+			this.reportedTitle = menuTitle;
+			region.add(0, 0, 1, 1);
+		}
+	}
+	
+	/**
+	 * Adds the area of the score drawn by drawScore with the same arguments, if the game time changed
+	 * @param region
+	 * @param positionX Expressed compared to window scale (0..1, 0..1)
+	 * @param positionY Expressed compared to window scale (0..1, 0..1)
+	 * @param scaleX Expressed compared to window scale (0..1, 0..1)
+	 * @param scaleY Expressed compared to window scale (0..1, 0..1)
+	 */
+	public void addScoreArea(final DirtyRegion region, final double positionX, final double positionY,
+			final double scaleX, final double scaleY) {
 		GameState gameState = GameState.getInstance();
-		if (gameState.isPlaying()) {
+		if (gameState.gameTime == this.reportedGameTime) {
+			return;
+		}
+		this.reportedGameTime = gameState.gameTime;
+		double width = Math.max(
+				Math.max(this.getScoreLineWidth(0, gameState.gameTime), this.getScoreLineWidth(1, gameState.previousTime)),
+				this.getScoreLineWidth(2, gameState.previousVictoryTime)
+		);
+		region.add(
+				positionX,
+				positionY + scaleY * GameMenu.SCORE_TOP,
+				scaleX * width,
+				scaleY * (GameMenu.SCORE_BOTTOM - GameMenu.SCORE_TOP)
+		);
+	}
+	
+	/**
+	 * Copies the title and the score into the snapshot, called from the game thread at the end of every physics frame
+	 * @param snapshot
+	 */
+	public void saveSnapshot(final RenderSnapshot snapshot) {
+		GameState gameState = GameState.getInstance();
+		snapshot.menuTitle = GameMenu.getTitle(gameState);
+		snapshot.gameTime = gameState.gameTime;
+		snapshot.previousTime = gameState.previousTime;
+		snapshot.previousVictoryTime = gameState.previousVictoryTime;
+	}
+	
+	/**
+	 * Sets the snapshot the menu and the score are drawn from, called from the thread that renders before drawing
+	 * @param snapshot
+	 */
+	public void setSnapshot(final RenderSnapshot snapshot) {
+		this.drawnSnapshot = snapshot;
+	}
+	
+	/**
+	 * Queues backdrop, renders the menu image again if the title or device size changed, queues copying it,
+	 * and calls drawScore, each in a layer of its own, if the snapshot has a title
+	 * @param g2d
+	 * @param queue
+	 */
+	public void draw(final Graphics2D g2d, final RenderQueue queue) {
+		RenderSnapshot snapshot = this.drawnSnapshot;
+		if (snapshot == null || snapshot.menuTitle == null) {
 			return;
 		}
 		
 		AffineTransform oldTransform = g2d.getTransform();
 		
-		g2d.setColor(GameMenu.BACKDROP_COLOR);
-		g2d.fill(GameMenu.RECTANGLE);
+		queue.beginLayer();
+		queue.fill(GameMenu.RECTANGLE, GameMenu.BACKDROP_COLOR, false, 0, 0, 1, 1);
+		
+		String menuTitle = snapshot.menuTitle;
+		double pixelWidth = oldTransform.getScaleX() * this.scale.getX(),
+				pixelHeight = oldTransform.getScaleY() * this.scale.getY();
+		int imageWidth = (int) Math.round(pixelWidth) + 1,
+				imageHeight = (int) Math.round(pixelHeight) + 1;
+		if (imageWidth <= 1 || imageHeight <= 1) {
+			return;
+		}
+		if (this.menuImage == null || menuTitle != this.menuImageTitle ||
+				this.menuImage.getWidth() != imageWidth || this.menuImage.getHeight() != imageHeight) {
+			this.renderMenu(menuTitle, imageWidth, imageHeight);
+		}
+		
+		queue.beginLayer();
+		queue.image(
+				this.menuImage,
+				Math.round(oldTransform.getScaleX() * this.position.getX() + oldTransform.getTranslateX()),
+				Math.round(oldTransform.getScaleY() * this.position.getY() + oldTransform.getTranslateY()),
+				0, 0, imageWidth, imageHeight
+		);
+		
+		this.drawScore(
+				queue,
+				this.position.getX(),
+				this.position.getY() + 0.8 * this.scale.getY(),
+				0.005 * this.scale.getX(),
+				0.005 * this.scale.getY()
+		);
+	}
+	
+	/**
+	 * Queues the score from the snapshot, anti-aliased, in a layer of its own
+	 * @param queue
+	 * @param positionX Expressed compared to window scale (0..1, 0..1)
+	 * @param positionY Expressed compared to window scale (0..1, 0..1)
+	 * @param scaleX Expressed compared to window scale (0..1, 0..1)
+	 * @param scaleY Expressed compared to window scale (0..1, 0..1)
+	 */
+	public void drawScore(final RenderQueue queue, final double positionX, final double positionY, final double scaleX, final double scaleY) {
+		RenderSnapshot snapshot = this.drawnSnapshot;
+		if (snapshot == null) {
+			return;
+		}
 		
-		g2d.translate(this.position.getX(), this.position.getY());
-		g2d.scale(this.scale.getX(), this.scale.getY());
+		queue.beginLayer();
+		this.drawScoreLine(queue, 0, snapshot.gameTime, positionX, positionY, scaleX, scaleY);
+		this.drawScoreLine(queue, 1, snapshot.previousTime, positionX, positionY + 12 * scaleY, scaleX, scaleY);
+		this.drawScoreLine(queue, 2, snapshot.previousVictoryTime, positionX, positionY + 24 * scaleY, scaleX, scaleY);
+	}
+	
+	/**
+	 * Queues the label, followed by the time formatted the same as with DecimalFormat("#.#")
+	 * @param queue
+	 * @param label Index of the label glyphs
+	 * @param time In seconds
+	 * @param positionX Start of the line, expressed compared to window scale (0..1, 0..1)
+	 * @param positionY Baseline of the line, expressed compared to window scale (0..1, 0..1)
+	 * @param scaleX Expressed compared to window scale (0..1, 0..1)
+	 * @param scaleY Expressed compared to window scale (0..1, 0..1)
+	 */
+	private void drawScoreLine(final RenderQueue queue, final int label, final double time,
+			final double positionX, final double positionY, final double scaleX, final double scaleY) {
+		double x = 6;
+		queue.fill(GameMenu.LABEL_OUTLINES[label], Color.white, true, positionX + x * scaleX, positionY, scaleX, scaleY);
+		x += GameMenu.LABEL_ADVANCES[label];
+		int length = GameMenu.formatTime(time, this.timeBuffer);
+		for (int i = 0; i < length; i += 1) {
+			int glyph = GameMenu.TIME_CHARACTERS.indexOf(this.timeBuffer[i]);
+			queue.fill(GameMenu.TIME_OUTLINES[glyph], Color.white, true, positionX + x * scaleX, positionY, scaleX, scaleY);
+			x += GameMenu.TIME_ADVANCES[glyph];
+		}
+	}
+	
+	/**
+	 * @param label Index of the label glyphs
+	 * @param time In seconds
+	 * @return Width of the line drawn by drawScoreLine, in score units
+	 */
+	private double getScoreLineWidth(final int label, final double time) {
+		double width = 6 + GameMenu.LABEL_ADVANCES[label];
+		int length = GameMenu.formatTime(time, this.measureBuffer);
+		for (int i = 0; i < length; i += 1) {
+			width += GameMenu.TIME_ADVANCES[GameMenu.TIME_CHARACTERS.indexOf(this.measureBuffer[i])];
+		}
+		return width;
+	}
+	
+	/**
+	 * Renders the menu panel, its border, the title and the instructions into the menu image
+	 * @param menuTitle One of the title constants
+	 * @param imageWidth Panel width in device pixels, plus one
+	 * @param imageHeight Panel height in device pixels, plus one
+	 */
+	private void renderMenu(final String menuTitle, final int imageWidth, final int imageHeight) {
+		if (this.menuImage == null || this.menuImage.getWidth() != imageWidth || this.menuImage.getHeight() != imageHeight) {
+			this.menuImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		this.menuImageTitle = menuTitle;
+		
+		Graphics2D g2d = this.menuImage.createGraphics();
+		g2d.setComposite(AlphaComposite.Clear);
+		g2d.fillRect(0, 0, imageWidth, imageHeight);
+		g2d.setComposite(AlphaComposite.SrcOver);
+		g2d.scale(imageWidth - 1, imageHeight - 1);
 		
 		g2d.setColor(GameMenu.MENU_COLOR);
 		g2d.fill(GameMenu.RECTANGLE);
@@ -58,24 +302,13 @@ public class GameMenu implements SceneObject {
 		g2d.setColor(Color.white);
 		g2d.draw(GameMenu.RECTANGLE);
 		
-		RenderingHints oldHints = g2d.getRenderingHints();
 		g2d.setRenderingHint(
         	    RenderingHints.KEY_ANTIALIASING,
         	    RenderingHints.VALUE_ANTIALIAS_ON);
 		
-		AffineTransform transformBeforeText = g2d.getTransform();
-		
 		g2d.scale(0.005, 0.005);
 		g2d.setPaint(Color.white);
 		
-		String menuTitle;
-		if (gameState.isVictory()) {
-			menuTitle = "Victory!";
-		} else if (gameState.isGameOver()) {
-			menuTitle = "Defeat!";
-		} else {
-			menuTitle = "Paused";
-		}
 		g2d.setFont(GameMenu.TITLE_FONT);
 		g2d.drawString(
 				menuTitle,
@@ -91,58 +324,82 @@ public class GameMenu implements SceneObject {
 		g2d.drawString("A       Toggle Animation",   6, 96);
 		g2d.drawString("M       Mute/Unmute",        6, 108);
 		g2d.drawString("F10     Exit Game",          6, 120);
-		g2d.drawString("X       ???",                6, 132);
+		g2d.drawString("B       Multi-Ball",         6, 132);
+		g2d.drawString("X       ???",                6, 144);
 		
-		g2d.setTransform(transformBeforeText);
-		
-		drawScore(g2d, 0, 0.8, 0.005, 0.005);
-		
-		g2d.setRenderingHints(oldHints);
-		
-		g2d.setTransform(oldTransform);
+		g2d.dispose();
 	}
 	
 	/**
-	 * Sets transformation matrix, enables anti-aliasing, and prints out the score based on GameState singleton
-	 * @param g2d
-	 * @param positionX Expressed compared to window scale (0..1, 0..1)
-	 * @param positionY Expressed compared to window scale (0..1, 0..1)
-	 * @param scaleX Expressed compared to window scale (0..1, 0..1)
-	 * @param scaleY Expressed compared to window scale (0..1, 0..1)
+	 * @param gameState
+	 * @return One of the title constants, or null if the menu is hidden
 	 */
-	public void drawScore(final Graphics2D g2d, final double positionX, final double positionY, final double scaleX, final double scaleY) {
-		GameState gameState = GameState.getInstance();
-		
-		AffineTransform oldTransform = g2d.getTransform();
-		
-		g2d.translate(positionX, positionY);
-		g2d.scale(scaleX, scaleY);
-		
-		RenderingHints oldHints = g2d.getRenderingHints();
-		g2d.setRenderingHint(
-        	    RenderingHints.KEY_ANTIALIASING,
-        	    RenderingHints.VALUE_ANTIALIAS_ON);
-		
-		g2d.setFont(GameMenu.SCORE_FONT);
-		g2d.setPaint(Color.white);
-		g2d.drawString(
-				"Current Time: " + GameMenu.DECIMAL_FORMAT.format(gameState.gameTime),
-				6,
-				0
-		);
-		g2d.drawString(
-				"Previous Time: " + GameMenu.DECIMAL_FORMAT.format(gameState.previousTime),
-				6,
-				12
-		);
-		g2d.drawString(
-				"Previous Victory: " + GameMenu.DECIMAL_FORMAT.format(gameState.previousVictoryTime),
-				6,
-				24
-		);
-		
-		g2d.setRenderingHints(oldHints);
-		
-		g2d.setTransform(oldTransform);
+	private static String getTitle(final GameState gameState) {
+		if (gameState.isPlaying()) {
+			return null;
+		} else if (gameState.isVictory()) {
+			return GameMenu.VICTORY_TITLE;
+		} else if (gameState.isGameOver()) {
+			return GameMenu.GAME_OVER_TITLE;
+		} else {
+			return GameMenu.PAUSED_TITLE;
+		}
+	}
+	
+	/**
+	 * Formats the time with at most one decimal, rounded half to even and omitted if it is zero,
+	 * same as DecimalFormat("#.#")
+	 * @param time In seconds, not negative
+	 * @param buffer Written from the start
+	 * @return Number of characters written
+	 */
+	private static int formatTime(final double time, final char[] buffer) {
+		// Multiplying by 10 can round, so move to the tenth nearest to the exact time, with ties to even
+		long tenths = Math.round(time * 10);
+		int aboveMiddle = GameMenu.compareTwentieths(time, 2 * tenths + 1),
+				belowMiddle = GameMenu.compareTwentieths(time, 2 * tenths - 1);
+		if (aboveMiddle > 0 || (aboveMiddle == 0 && tenths % 2 == 1)) {
+			tenths += 1;
+		} else if (belowMiddle < 0 || (belowMiddle == 0 && tenths % 2 == 1)) {
+			tenths -= 1;
+		}
+		long whole = tenths / 10;
+		int length = 0;
+		do {
+			buffer[length] = (char) ('0' + whole % 10);
+			length += 1;
+			whole /= 10;
+		} while (whole > 0);
+		// Digits were written from the lowest, so reverse them
+		for (int i = 0; i < length / 2; i += 1) {
+			char digit = buffer[i];
+			buffer[i] = buffer[length - 1 - i];
+			buffer[length - 1 - i] = digit;
+		}
+		if (tenths % 10 != 0) {
+			buffer[length] = '.';
+			buffer[length + 1] = (char) ('0' + tenths % 10);
+			length += 2;
+		}
+		return length;
+	}
+	
+	/**
+	 * Compares 20 * time with an odd number exactly, that is time with a middle between two tenths.
+	 * 16 * time and 4 * time are exact, and their sum is split into the rounded sum and its exact error.
+	 * @param time In seconds, not negative
+	 * @param odd Twice the number of tenths plus one
+	 * @return Negative, zero or positive, as 20 * time is less than, equal to, or greater than odd
+	 */
+	private static int compareTwentieths(final double time, final long odd) {
+		double a = 16 * time,
+				b = 4 * time,
+				sum = a + b,
+				bPart = sum - a,
+				error = (a - (sum - bPart)) + (b - bPart);
+		if (sum != odd) {
+			return sum < odd ? -1 : 1;
+		}
+		return error < 0 ? -1 : (error > 0 ? 1 : 0);
 	}
 }
@@ -0,0 +1,25 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
+
+/**
+ * Scene object that is drawn in between its state at the previous and the current physics frame
+ */
+public interface Interpolated {
+	/**
+	 * Remembers the current state as the one to interpolate from.
+	 * Called at the start of every physics frame.
+	 */
+	public void saveState();
+	/**
+	 * Copies the saved and the current state into the snapshot.
+	 * Called from the game thread at the end of every physics frame.
+	 * @param snapshot
+	 */
+	public void saveSnapshot(final RenderSnapshot snapshot);
+	/**
+	 * Sets the state that is drawn from the snapshot.
+	 * Called from the thread that renders, before drawing.
+	 * @param snapshot
+	 * @param alpha Between 0 and 1, where 0 draws the saved state, and 1 draws the current state
+	 */
+	public void setSnapshot(final RenderSnapshot snapshot, final double alpha);
+}
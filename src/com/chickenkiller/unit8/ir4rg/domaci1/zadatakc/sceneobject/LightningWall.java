@@ -2,39 +2,59 @@ package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
 
 import java.awt.*;
 import java.awt.geom.*;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Random;
 
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
 
+/**
+ * Jagged lightning between two origin points, animated by cycling through a pool of bolts generated up front.
+ * Each bolt is a single path, never changed once generated, so it can be queued and stroked without allocating,
+ * and replayed from several threads at once.
+ * The bolt and the color are drawn from a snapshot, since they are changed by the game thread.
+ */
 public class LightningWall implements SceneObject {
-	private static final BasicStroke THIN_STROKE = new BasicStroke(0.005f);
+	/**
+	 * Round joins, so that the sharp angles of the bolt do not stick out as miters
+	 */
+	private static final BasicStroke THIN_STROKE = new BasicStroke(0.005f, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_ROUND);
 	private static final Random RAND = new Random();
 	private static final double ANIMATION_FRAME_LENGTH = 125;
 	/**
 	 * Total number of spark points including the two origin points (N + 2)
 	 */
 	private static final int SPARK_POINT_COUNT = 20;
+	/**
+	 * Number of bolts generated for each lightning wall
+	 */
+	private static final int BOLT_COUNT = 16;
 	
 	private final Vector position;
 	private final Vector scale;
-	private final ArrayList<Double> randomYs;
 	/**
-	 * Contains N + 2 vertexes for drawing the lightning
+	 * Bolts through N + 2 spark points each, expressed in local scale (0..1, 0..1)
 	 */
-	private final double[] sparkPointsX;
-	private final double[] sparkPointsY;
+	private final Path2D[] bolts;
+	
 	/**
-	 * Contains N + 1 lines drawn between adjacent spark points
+	 * Index of the bolt currently shown
 	 */
-	private final Line2D[] sparks;
-	
+	private int bolt = 0;
 	private double animationFrameTime;
 	private Color color;
+	/**
+	 * True if the sparks moved since the last call to addDirtyArea
+	 */
+	private boolean animationChanged = false;
+	/*
+	 * Bolt and color taken from the snapshot, only touched by the thread that renders
+	 */
+	private int drawnBolt = 0;
+	private Color drawnColor = null;
 	
 	/**
-	 * Initializes all fields, instantiates sparkPoints and sparks, and calls updateAnimation
+	 * Initializes all fields, generates the bolts, and calls updateAnimation
 	 * @param position Expressed compared to window scale (0..1, 0..1)
 	 * @param originX X component of origin point position, expressed in local scale (0..1)
 	 * @param scale Expressed compared to window scale (0..1, 0..1)
@@ -47,18 +67,10 @@ public class LightningWall implements SceneObject {
 		
 		this.color = Color.white;
 		
-		this.randomYs = new ArrayList<Double>();
-		
-		this.sparkPointsX = new double[LightningWall.SPARK_POINT_COUNT];
-		this.sparkPointsY = new double[LightningWall.SPARK_POINT_COUNT];
-		this.sparkPointsX[0] = originX;
-		this.sparkPointsY[0] = 0;
-		this.sparkPointsX[LightningWall.SPARK_POINT_COUNT - 1] = originX;
-		this.sparkPointsY[LightningWall.SPARK_POINT_COUNT - 1] = 1;
-		
-		this.sparks = new Line2D[LightningWall.SPARK_POINT_COUNT - 1];
-		for (int i = 0; i < LightningWall.SPARK_POINT_COUNT - 1; i += 1) {
-			this.sparks[i] = new Line2D.Double();
+		this.bolts = new Path2D[LightningWall.BOLT_COUNT];
+		double[] randomYs = new double[LightningWall.SPARK_POINT_COUNT - 2];
+		for (int i = 0; i < LightningWall.BOLT_COUNT; i += 1) {
+			this.bolts[i] = LightningWall.generateBolt(originX, randomYs);
 		}
 		
 		this.updateAnimation();
@@ -75,29 +87,62 @@ public class LightningWall implements SceneObject {
 	}
 	
 	/**
-	 * Sets transformation matrix, enables anti-aliasing, and draws the sparks
+	 * Queues the current bolt, anti-aliased, into the current layer, so that the bolts of all lightning walls are batched
 	 * @param g2d
+	 * @param queue
 	 */
-	public void draw(final Graphics2D g2d) {
-		AffineTransform oldTransform = g2d.getTransform();
-		
-		g2d.translate(this.position.getX(), this.position.getY());
-		g2d.scale(this.scale.getX(), this.scale.getY());
-		g2d.setStroke(LightningWall.THIN_STROKE);
-		
-		RenderingHints oldHints = g2d.getRenderingHints();
-		g2d.setRenderingHint(
-        	    RenderingHints.KEY_ANTIALIASING,
-        	    RenderingHints.VALUE_ANTIALIAS_ON);
-		
-		g2d.setPaint(this.color);
-		for (Line2D spark: this.sparks) {
-			g2d.draw(spark);
+	public void draw(final Graphics2D g2d, final RenderQueue queue) {
+		if (this.drawnColor == null) {
+			return;
 		}
-		
-		g2d.setRenderingHints(oldHints);
-		
-		g2d.setTransform(oldTransform);
+		queue.draw(
+				this.bolts[this.drawnBolt],
+				this.drawnColor,
+				LightningWall.THIN_STROKE,
+				true,
+				this.position.getX(),
+				this.position.getY(),
+				this.scale.getX(),
+				this.scale.getY()
+		);
+	}
+	
+	/**
+	 * Copies the bolt and the color into the snapshot, called from the game thread at the end of every physics frame
+	 * @param snapshot
+	 * @param slot Index of the lightning wall in the snapshot
+	 */
+	public void saveSnapshot(final RenderSnapshot snapshot, final int slot) {
+		snapshot.lightningBolts[slot] = this.bolt;
+		snapshot.lightningColors[slot] = this.color;
+	}
+	
+	/**
+	 * Takes the bolt and the color to draw from the snapshot, called from the thread that renders before drawing
+	 * @param snapshot
+	 * @param slot Index of the lightning wall in the snapshot
+	 */
+	public void setSnapshot(final RenderSnapshot snapshot, final int slot) {
+		this.drawnBolt = snapshot.lightningBolts[slot];
+		this.drawnColor = snapshot.lightningColors[slot];
+	}
+	
+	/**
+	 * Adds the whole area of the lightning wall, including half of the stroke, if the bolt changed
+	 * @param region
+	 */
+	public void addDirtyArea(final DirtyRegion region) {
+		if (!this.animationChanged) {
+			return;
+		}
+		this.animationChanged = false;
+		double halfStroke = 0.5 * LightningWall.THIN_STROKE.getLineWidth();
+		region.add(
+				this.position.getX() - halfStroke * this.scale.getX(),
+				this.position.getY() - halfStroke * this.scale.getY(),
+				(1 + 2 * halfStroke) * this.scale.getX(),
+				(1 + 2 * halfStroke) * this.scale.getY()
+		);
 	}
 	
 	/**
@@ -113,30 +158,33 @@ public class LightningWall implements SceneObject {
 	}
 	
 	/**
-	 * First N random Y values (0..1) are generated and sorted.
-	 * Then each spark point are given a random X value (0..1)
-	 * and a Y value from the sorted sequence.
-	 * Lastly the spark lines are given start and end coordinates based on the spark points.
+	 * Switches to a random bolt other than the current one
 	 */
 	private void updateAnimation() {
-		this.randomYs.clear();
-		for (int i = 0; i < LightningWall.SPARK_POINT_COUNT - 2; i += 1) {
-			this.randomYs.add(LightningWall.RAND.nextDouble());
-		}
-		Collections.sort(this.randomYs);
-		
-		for (int i = 1; i < LightningWall.SPARK_POINT_COUNT - 1; i += 1) {
-			this.sparkPointsX[i] = LightningWall.RAND.nextDouble();
-			this.sparkPointsY[i] = this.randomYs.get(i - 1);
+		this.animationChanged = true;
+		this.bolt = (this.bolt + 1 + LightningWall.RAND.nextInt(LightningWall.BOLT_COUNT - 1)) % LightningWall.BOLT_COUNT;
+	}
+	
+	/**
+	 * First N random Y values (0..1) are generated and sorted.
+	 * Then the bolt goes from the first origin point through N spark points,
+	 * each given a random X value (0..1) and a Y value from the sorted sequence, to the second origin point.
+	 * @param originX X component of origin point position, expressed in local scale (0..1)
+	 * @param randomYs Reused for the N random Y values
+	 * @return Bolt expressed in local scale (0..1, 0..1)
+	 */
+	private static Path2D generateBolt(final double originX, final double[] randomYs) {
+		for (int i = 0; i < randomYs.length; i += 1) {
+			randomYs[i] = LightningWall.RAND.nextDouble();
 		}
+		Arrays.sort(randomYs);
 		
-		for (int i = 0; i < LightningWall.SPARK_POINT_COUNT - 1; i += 1) {
-			this.sparks[i].setLine(
-					this.sparkPointsX[i],
-					this.sparkPointsY[i],
-					this.sparkPointsX[i + 1],
-					this.sparkPointsY[i + 1]
-			);
+		Path2D bolt = new Path2D.Double(Path2D.WIND_NON_ZERO, LightningWall.SPARK_POINT_COUNT);
+		bolt.moveTo(originX, 0);
+		for (int i = 0; i < randomYs.length; i += 1) {
+			bolt.lineTo(LightningWall.RAND.nextDouble(), randomYs[i]);
 		}
+		bolt.lineTo(originX, 1);
+		return bolt;
 	}
 }
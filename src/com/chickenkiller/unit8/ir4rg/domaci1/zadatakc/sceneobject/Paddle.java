@@ -4,95 +4,148 @@ import java.awt.*;
 import java.awt.geom.*;
 
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.SoundManager;
-import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Collision;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Box;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Circle;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Impact;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.MutableVector;
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
 
-public class Paddle implements SceneObject, Collidable {
+public class Paddle implements SceneObject, Collidable, Interpolated {
 	private static final BasicStroke MEDIUM_STROKE = new BasicStroke(0.01f);
 	/**
 	 * Round rectangle used for drawing the paddle
 	 */
 	private static final RoundRectangle2D SHAPE = new RoundRectangle2D.Double(-0.5, -0.125, 1.0, 0.25, 0.25, 0.25);
+	/*
+	 * Half of the drawn size compared to scale, including half of the stroke
+	 */
+	private static final double DRAWN_EXTENT_X = 0.5 + 0.005;
+	private static final double DRAWN_EXTENT_Y = 0.125 + 0.005;
 	
 	private final Vector scale;
 	/**
-	 * Rectangle used to calculate the paddleArea
+	 * Box used for collision. Spans whole X of paddle, but only narrow strip on top edge.
+	 * Its ends are rounded, like those of the drawn paddle.
 	 */
-	private final Rectangle2D areaRectangle;
+	private final Box paddleBox;
 	/**
-	 * Temporary area used to store intersection results
+	 * Temporary impact used for sweeping the ball
 	 */
-	private final Area intersection;
+	private final Impact impact;
 	
-	private Vector position;
-	private GradientPaint colorGradient;
+	private final MutableVector position;
+	/**
+	 * Position at the start of the current physics frame, used for interpolated drawing
+	 */
+	private final MutableVector previousPosition;
 	/**
-	 * Area used for collision. Spans whole X of paddle, but only narrow strip on top edge.
+	 * Area the paddle was drawn in since the last call to addDirtyArea, grown by every saveState
 	 */
-	private Area paddleArea;
+	private final DirtyRegion movedArea;
+	/*
+	 * Position drawn, interpolated from the snapshot, and gradient drawn, only touched by the thread that renders
+	 */
+	private double drawnX;
+	private double drawnY;
+	private GradientPaint drawnGradient;
+	private GradientPaint colorGradient;
 	
 	/**
-	 * Initializes all fields, and calls updateArea
+	 * Initializes all fields, and calls updateBox
 	 * @param position Expressed compared to window scale (0..1, 0..1)
 	 * @param scale Expressed compared to window scale (0..1, 0..1)
 	 * @param baseColor
 	 */
 	public Paddle(final Vector position, final Vector scale, final Color baseColor) {
-		this.position = position;
+		this.position = new MutableVector(position);
+		this.previousPosition = new MutableVector(position);
 		this.scale = scale;
+		this.movedArea = new DirtyRegion(1);
+		this.addDrawnArea(this.movedArea);
+		this.drawnX = position.getX();
+		this.drawnY = position.getY();
 		
 		this.colorGradient = new GradientPaint(0, -0.025f, Color.white, 0, 0.1f, baseColor, true);
+		this.drawnGradient = this.colorGradient;
 		
-		this.areaRectangle = new Rectangle2D.Double();
-		this.intersection = new Area();
-		this.updateArea();
+		this.paddleBox = new Box(0, 0, 0, 0, 0.03125 * scale.getY());
+		this.impact = new Impact();
+		this.updateBox();
 	}
 	
 	public void update(final double deltatTime) {
-		this.updateArea();
+		this.updateBox();
+	}
+	
+	public void saveState() {
+		this.previousPosition.set(this.position);
+		this.addDrawnArea(this.movedArea);
+	}
+	
+	public void saveSnapshot(final RenderSnapshot snapshot) {
+		snapshot.paddlePreviousX = this.previousPosition.getX();
+		snapshot.paddleX = this.position.getX();
+		snapshot.paddleY = this.position.getY();
+		snapshot.paddleGradient = this.colorGradient;
+	}
+	
+	public void setSnapshot(final RenderSnapshot snapshot, final double alpha) {
+		this.drawnX = snapshot.paddlePreviousX + (snapshot.paddleX - snapshot.paddlePreviousX) * alpha;
+		this.drawnY = snapshot.paddleY;
+		this.drawnGradient = snapshot.paddleGradient;
 	}
 	
 	/**
-	 * Sets transformation matrix, enables anti-aliasing, and draws the paddle
+	 * Queues the paddle, anti-aliased, in a layer of its own,
+	 * at the position interpolated from the last snapshot
 	 * @param g2d
+	 * @param queue
 	 */
-	public void draw(final Graphics2D g2d) {
-		AffineTransform oldTransform = g2d.getTransform();
-		
-		g2d.translate(this.position.getX(), this.position.getY());
-		g2d.scale(this.scale.getX(), this.scale.getY());
-		g2d.setStroke(MEDIUM_STROKE);
-		
-		RenderingHints oldHints = g2d.getRenderingHints();
-		g2d.setRenderingHint(
-        	    RenderingHints.KEY_ANTIALIASING,
-        	    RenderingHints.VALUE_ANTIALIAS_ON);
-		
-		g2d.setPaint(this.colorGradient);
-		g2d.fill(Paddle.SHAPE);
-		g2d.setPaint(Color.white);
-		g2d.draw(Paddle.SHAPE);
-		
-		g2d.setRenderingHints(oldHints);
-		
-		g2d.setTransform(oldTransform);
+	public void draw(final Graphics2D g2d, final RenderQueue queue) {
+		queue.beginLayer();
+		queue.fill(Paddle.SHAPE, this.drawnGradient, true, this.drawnX, this.drawnY, this.scale.getX(), this.scale.getY());
+		queue.draw(Paddle.SHAPE, Color.white, Paddle.MEDIUM_STROKE, true, this.drawnX, this.drawnY, this.scale.getX(), this.scale.getY());
+	}
+	
+	/**
+	 * Adds the area the paddle was drawn in since the last call, along with its current area,
+	 * which is kept to be added next time
+	 * @param region
+	 */
+	public void addDirtyArea(final DirtyRegion region) {
+		this.addDrawnArea(this.movedArea);
+		region.add(this.movedArea);
+		this.movedArea.clear();
+		this.addDrawnArea(this.movedArea);
 	}
 	
 	/**
-	 * Tests for collision of paddleArea with ball
+	 * Sweeps the ball against paddleBox, but only while the ball is falling.
+	 * The impact keeps the time and penetration of the box, but always gets the upward normal,
+	 * so that a hit on a rounded end still sends the ball back up, instead of only flipping its X velocity.
 	 * @param ball
 	 */
-	public void testCollision(final Area ball) throws Collision {
-		this.intersection.reset();
-		this.intersection.add(ball);
-		this.intersection.intersect(this.paddleArea);
-		if (!this.intersection.isEmpty()) {
-			SoundManager.getInstance().play("paddle.wav");
-			throw new Collision(Vector.MINUS_Y_UNIT);
+	public void testSweep(final Circle ball, final double dx, final double dy, final ContactManifold manifold) {
+		if (dy > 0 && this.paddleBox.sweep(ball, dx, dy, this.impact)) {
+			this.impact.set(this.impact.getTime(), 0, -1, this.impact.getPenetration());
+			manifold.add(this.impact, this, 0);
 		}
 	}
 	
-	public Vector getPosition() {
+	/**
+	 * Plays the paddle sound
+	 * @param manifold
+	 * @param contact
+	 */
+	public void collide(final ContactManifold manifold, final int contact) {
+		SoundManager.getInstance().play("paddle.wav");
+	}
+	
+	/**
+	 * @return The position of the paddle, which should not be modified by the caller
+	 */
+	public MutableVector getPosition() {
 		return this.position;
 	}
 	
@@ -101,7 +154,7 @@ public class Paddle implements SceneObject, Collidable {
 	}
 	
 	public void setX(final double x) {
-		this.position = new Vector(x, this.position.getY(), this.position.getZ());
+		this.position.setX(x);
 	}
 	
 	/**
@@ -113,15 +166,24 @@ public class Paddle implements SceneObject, Collidable {
 	}
 	
 	/**
-	 * Updates the area rectangle based on position, and then updates paddleArea base on it
+	 * Updates the paddleBox based on position
 	 */
-	private void updateArea() {
-		this.areaRectangle.setFrame(
+	private void updateBox() {
+		this.paddleBox.setFrame(
 				this.position.getX() - 0.5 * this.scale.getX(),
 				this.position.getY() - 0.125 * this.scale.getY(),
 				1.0 * this.scale.getX(),
 				0.0625 * this.scale.getY()
 		);
-		this.paddleArea = new Area(this.areaRectangle);
+	}
+	
+	/**
+	 * Adds the area the paddle is drawn in at its current position
+	 * @param region
+	 */
+	private void addDrawnArea(final DirtyRegion region) {
+		double halfWidth = Paddle.DRAWN_EXTENT_X * this.scale.getX(),
+				halfHeight = Paddle.DRAWN_EXTENT_Y * this.scale.getY();
+		region.add(this.position.getX() - halfWidth, this.position.getY() - halfHeight, 2 * halfWidth, 2 * halfHeight);
 	}
 }
@@ -0,0 +1,327 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Queue of the draw commands of a frame, run against Graphics2D in batches.
+ * Commands are grouped into layers, which are run in the order they were begun,
+ * while the commands inside a layer are sorted by antialiasing, kind, stroke and paint,
+ * so that each state is only set once for all commands that share it.
+ * Strokes and paints are sorted by small ids given out in the order they are first submitted,
+ * so that overlapping commands are run in the same order in every frame and every run.
+ * Commands are kept in parallel arrays, and each command occupies the same index in all of them.
+ * Once sorted, the queue can be replayed from several threads at once, for example into tiles of a frame,
+ * since replaying does not change it.
+ */
+public class RenderQueue {
+	private static final int INITIAL_CAPACITY = 64;
+	/**
+	 * Number of strokes and paints with an id, beyond which the ids are given out again from the next frame
+	 */
+	private static final int MAX_STATE_IDS = 1024;
+	/*
+	 * Kinds of commands
+	 */
+	private static final byte KIND_FILL = 0;
+	private static final byte KIND_DRAW = 1;
+	private static final byte KIND_IMAGE = 2;
+	
+	private byte[] kinds;
+	/*
+	 * What each command draws, depending on its kind: a shape, or part of an image
+	 */
+	private Shape[] shapes;
+	private Image[] images;
+	private Paint[] paints;
+	private Stroke[] strokes;
+	private boolean[] antialiased;
+	/*
+	 * Translation and scale applied on top of the graphics transform, expressed compared to window scale.
+	 * Images are positioned in device pixels instead, and never scaled.
+	 */
+	private double[] translateX;
+	private double[] translateY;
+	private double[] scaleX;
+	private double[] scaleY;
+	/*
+	 * Part of the image copied by image commands, in image pixels
+	 */
+	private int[] sourceX;
+	private int[] sourceY;
+	private int[] sourceWidth;
+	private int[] sourceHeight;
+	private int[] layers;
+	/**
+	 * Key the commands of a layer are sorted by, combining antialiasing, kind, stroke and paint
+	 */
+	private long[] stateKeys;
+	/**
+	 * Indexes of the commands in the order they are run
+	 */
+	private int[] order;
+	/**
+	 * Reused for building the transform of each command when flushing
+	 */
+	private final AffineTransform commandTransform;
+	/**
+	 * Id of every stroke and paint submitted so far, starting from 1
+	 */
+	private final IdentityHashMap<Object, Integer> stateIds;
+	
+	private int count = 0;
+	private int layer = 0;
+	
+	public RenderQueue() {
+		this.kinds = new byte[RenderQueue.INITIAL_CAPACITY];
+		this.shapes = new Shape[RenderQueue.INITIAL_CAPACITY];
+		this.images = new Image[RenderQueue.INITIAL_CAPACITY];
+		this.paints = new Paint[RenderQueue.INITIAL_CAPACITY];
+		this.strokes = new Stroke[RenderQueue.INITIAL_CAPACITY];
+		this.antialiased = new boolean[RenderQueue.INITIAL_CAPACITY];
+		this.translateX = new double[RenderQueue.INITIAL_CAPACITY];
+		this.translateY = new double[RenderQueue.INITIAL_CAPACITY];
+		this.scaleX = new double[RenderQueue.INITIAL_CAPACITY];
+		this.scaleY = new double[RenderQueue.INITIAL_CAPACITY];
+		this.sourceX = new int[RenderQueue.INITIAL_CAPACITY];
+		this.sourceY = new int[RenderQueue.INITIAL_CAPACITY];
+		this.sourceWidth = new int[RenderQueue.INITIAL_CAPACITY];
+		this.sourceHeight = new int[RenderQueue.INITIAL_CAPACITY];
+		this.layers = new int[RenderQueue.INITIAL_CAPACITY];
+		this.stateKeys = new long[RenderQueue.INITIAL_CAPACITY];
+		this.order = new int[RenderQueue.INITIAL_CAPACITY];
+		this.commandTransform = new AffineTransform();
+		this.stateIds = new IdentityHashMap<Object, Integer>();
+	}
+	
+	/**
+	 * Starts a new layer. Commands submitted after this are run after all commands submitted before it.
+	 */
+	public void beginLayer() {
+		this.layer += 1;
+	}
+	
+	/**
+	 * Queues filling the shape, after translating by (x, y) and then scaling by (sx, sy)
+	 */
+	public void fill(final Shape shape, final Paint paint, final boolean antialiased,
+			final double x, final double y, final double sx, final double sy) {
+		int i = this.add(RenderQueue.KIND_FILL, paint, null, antialiased, x, y, sx, sy);
+		this.shapes[i] = shape;
+	}
+	
+	/**
+	 * Queues drawing the outline of the shape, after translating by (x, y) and then scaling by (sx, sy)
+	 */
+	public void draw(final Shape shape, final Paint paint, final Stroke stroke, final boolean antialiased,
+			final double x, final double y, final double sx, final double sy) {
+		int i = this.add(RenderQueue.KIND_DRAW, paint, stroke, antialiased, x, y, sx, sy);
+		this.shapes[i] = shape;
+	}
+	
+	/**
+	 * Queues copying part of the image, pixel for pixel, to the device.
+	 * Commands of this kind keep the order they were submitted in within their layer.
+	 * @param image Must not change until the queue is run
+	 * @param x Left edge of the copy, in device pixels
+	 * @param y Top edge of the copy, in device pixels
+	 * @param sx Left edge of the copied part, in image pixels
+	 * @param sy Top edge of the copied part, in image pixels
+	 * @param width Width of the copied part, in pixels
+	 * @param height Height of the copied part, in pixels
+	 */
+	public void image(final Image image, final double x, final double y,
+			final int sx, final int sy, final int width, final int height) {
+		int i = this.add(RenderQueue.KIND_IMAGE, null, null, false, x, y, 1, 1);
+		this.images[i] = image;
+		this.sourceX[i] = sx;
+		this.sourceY[i] = sy;
+		this.sourceWidth[i] = width;
+		this.sourceHeight[i] = height;
+	}
+	
+	/**
+	 * Sorts, runs and empties the queue
+	 * @param g2d Graphics scaled to window scale (0..1, 0..1)
+	 */
+	public void flush(final Graphics2D g2d) {
+		this.sort();
+		this.replay(g2d, this.commandTransform);
+		this.clear();
+	}
+	
+	/**
+	 * Insertion sort of the order by layer, state key and submission order.
+	 * Commands are submitted layer by layer, so the order is already close to sorted.
+	 */
+	public void sort() {
+		for (int k = 1; k < this.count; k += 1) {
+			int i = this.order[k],
+					m = k - 1;
+			while (m >= 0 && this.isAfter(this.order[m], i)) {
+				this.order[m + 1] = this.order[m];
+				m -= 1;
+			}
+			this.order[m + 1] = i;
+		}
+	}
+	
+	/**
+	 * Runs all commands in sorted order, setting each state only when it changes,
+	 * and restores the transform and antialiasing hint of g2d, but not its paint and stroke.
+	 * Does not change the queue, so it can be called from several threads at once, each with its own g2d,
+	 * as long as the queued shapes, paints and images can be drawn from several threads at once.
+	 * @param g2d Graphics scaled to window scale (0..1, 0..1)
+	 * @param commandTransform Reused for building the transform of each command, owned by the calling thread
+	 */
+	public void replay(final Graphics2D g2d, final AffineTransform commandTransform) {
+		if (this.count == 0) {
+			return;
+		}
+		AffineTransform oldTransform = g2d.getTransform();
+		Object oldAntialiasing = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+		// -1 until the first command sets antialiasing, then 0 for off and 1 for on
+		int currentAntialiasing = -1;
+		Paint currentPaint = null;
+		Stroke currentStroke = null;
+		for (int k = 0; k < this.count; k += 1) {
+			int i = this.order[k];
+			if (this.kinds[i] == RenderQueue.KIND_IMAGE) {
+				commandTransform.setToTranslation(this.translateX[i], this.translateY[i]);
+				g2d.setTransform(commandTransform);
+				g2d.drawImage(
+						this.images[i],
+						0, 0, this.sourceWidth[i], this.sourceHeight[i],
+						this.sourceX[i], this.sourceY[i],
+						this.sourceX[i] + this.sourceWidth[i], this.sourceY[i] + this.sourceHeight[i],
+						null
+				);
+				continue;
+			}
+			if (currentAntialiasing != (this.antialiased[i] ? 1 : 0)) {
+				currentAntialiasing = this.antialiased[i] ? 1 : 0;
+				g2d.setRenderingHint(
+						RenderingHints.KEY_ANTIALIASING,
+						this.antialiased[i] ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+			}
+			if (this.paints[i] != currentPaint) {
+				currentPaint = this.paints[i];
+				g2d.setPaint(currentPaint);
+			}
+			if (this.kinds[i] == RenderQueue.KIND_DRAW && this.strokes[i] != currentStroke) {
+				currentStroke = this.strokes[i];
+				g2d.setStroke(currentStroke);
+			}
+			commandTransform.setTransform(oldTransform);
+			commandTransform.translate(this.translateX[i], this.translateY[i]);
+			commandTransform.scale(this.scaleX[i], this.scaleY[i]);
+			g2d.setTransform(commandTransform);
+			if (this.kinds[i] == RenderQueue.KIND_FILL) {
+				g2d.fill(this.shapes[i]);
+			} else {
+				g2d.draw(this.shapes[i]);
+			}
+		}
+		g2d.setTransform(oldTransform);
+		if (oldAntialiasing != null) {
+			g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, oldAntialiasing);
+		}
+	}
+	
+	/**
+	 * Empties the queue, dropping its references to shapes, images, paints and strokes
+	 */
+	public void clear() {
+		Arrays.fill(this.shapes, 0, this.count, null);
+		Arrays.fill(this.images, 0, this.count, null);
+		Arrays.fill(this.paints, 0, this.count, null);
+		Arrays.fill(this.strokes, 0, this.count, null);
+		this.count = 0;
+		this.layer = 0;
+		// Only between frames, so that all commands of a frame are sorted by the same ids
+		if (this.stateIds.size() > RenderQueue.MAX_STATE_IDS) {
+			this.stateIds.clear();
+		}
+	}
+	
+	/**
+	 * Adds a command with the state common to all kinds
+	 * @return Index of the new command
+	 */
+	private int add(final byte kind, final Paint paint, final Stroke stroke, final boolean antialiased,
+			final double x, final double y, final double sx, final double sy) {
+		if (this.count == this.kinds.length) {
+			this.grow();
+		}
+		int i = this.count;
+		this.kinds[i] = kind;
+		this.paints[i] = paint;
+		this.strokes[i] = stroke;
+		this.antialiased[i] = antialiased;
+		this.translateX[i] = x;
+		this.translateY[i] = y;
+		this.scaleX[i] = sx;
+		this.scaleY[i] = sy;
+		this.layers[i] = this.layer;
+		// Fills first, since they set no stroke, then grouped by stroke, and then by paint
+		this.stateKeys[i] = (antialiased ? 1L << 62 : 0)
+				| ((long) kind << 60)
+				| ((long) this.getStateId(stroke) << 31)
+				| this.getStateId(paint);
+		this.order[i] = i;
+		this.count += 1;
+		return i;
+	}
+	
+	/**
+	 * @return True if command a has to run after command b, otherwise false
+	 */
+	private boolean isAfter(final int a, final int b) {
+		if (this.layers[a] != this.layers[b]) {
+			return this.layers[a] > this.layers[b];
+		}
+		if (this.stateKeys[a] != this.stateKeys[b]) {
+			return this.stateKeys[a] > this.stateKeys[b];
+		}
+		return a > b;
+	}
+	
+	/**
+	 * @param state Stroke or paint, or null
+	 * @return Id of the state, given out on its first submission, or 0 for null
+	 */
+	private int getStateId(final Object state) {
+		if (state == null) {
+			return 0;
+		}
+		Integer id = this.stateIds.get(state);
+		if (id == null) {
+			id = this.stateIds.size() + 1;
+			this.stateIds.put(state, id);
+		}
+		return id;
+	}
+	
+	private void grow() {
+		int capacity = 2 * this.kinds.length;
+		this.kinds = Arrays.copyOf(this.kinds, capacity);
+		this.shapes = Arrays.copyOf(this.shapes, capacity);
+		this.images = Arrays.copyOf(this.images, capacity);
+		this.paints = Arrays.copyOf(this.paints, capacity);
+		this.strokes = Arrays.copyOf(this.strokes, capacity);
+		this.antialiased = Arrays.copyOf(this.antialiased, capacity);
+		this.translateX = Arrays.copyOf(this.translateX, capacity);
+		this.translateY = Arrays.copyOf(this.translateY, capacity);
+		this.scaleX = Arrays.copyOf(this.scaleX, capacity);
+		this.scaleY = Arrays.copyOf(this.scaleY, capacity);
+		this.sourceX = Arrays.copyOf(this.sourceX, capacity);
+		this.sourceY = Arrays.copyOf(this.sourceY, capacity);
+		this.sourceWidth = Arrays.copyOf(this.sourceWidth, capacity);
+		this.sourceHeight = Arrays.copyOf(this.sourceHeight, capacity);
+		this.layers = Arrays.copyOf(this.layers, capacity);
+		this.stateKeys = Arrays.copyOf(this.stateKeys, capacity);
+		this.order = Arrays.copyOf(this.order, capacity);
+	}
+}
@@ -0,0 +1,83 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
+
+import java.awt.*;
+
+/**
+ * State of the moving, fading and animated objects and the score at the end of a physics frame.
+ * Written only by the game thread, and only read by the thread that renders once it was published through a SnapshotExchange.
+ * Fields are written by the saveSnapshot method of each object, and read by the same object when it is drawn.
+ */
+public class RenderSnapshot {
+	/**
+	 * Number of the physics frame the snapshot was saved at, or 0 if it was never saved
+	 */
+	volatile long sequence = 0;
+	/**
+	 * Time up to which the game was simulated when the snapshot was saved, in milliseconds
+	 */
+	double time = 0;
+	
+	/*
+	 * Paddle and ball positions at the start and at the end of the physics frame, and the gradient of the paddle
+	 */
+	double paddlePreviousX = 0;
+	double paddleX = 0;
+	double paddleY = 0;
+	GradientPaint paddleGradient = null;
+	double ballPreviousX = 0;
+	double ballPreviousY = 0;
+	double ballX = 0;
+	double ballY = 0;
+	
+	/*
+	 * Balls of the swarm, the first swarmCount elements of each array are used
+	 */
+	int swarmCount = 0;
+	final double[] swarmX;
+	final double[] swarmY;
+	final double[] swarmRadius;
+	
+	/*
+	 * Fading and moving bricks in index order, the first brickCount elements of each array are used.
+	 * Grown by the brick store when it saves more bricks than fit.
+	 */
+	int brickCount = 0;
+	double[] brickX = new double[0];
+	double[] brickY = new double[0];
+	int[] brickLook = new int[0];
+	int[] brickStep = new int[0];
+	
+	/*
+	 * Bolt and color of each lightning wall, and the gradient of the out-of-bounds area
+	 */
+	final int[] lightningBolts;
+	final Color[] lightningColors;
+	GradientPaint bottomGradient = null;
+	
+	/**
+	 * Title of the menu, or null if it is hidden
+	 */
+	String menuTitle = null;
+	double gameTime = 0;
+	double previousTime = 0;
+	double previousVictoryTime = 0;
+	
+	/**
+	 * @param swarmCapacity Maximum number of balls in the swarm
+	 */
+	public RenderSnapshot(final int swarmCapacity) {
+		this.swarmX = new double[swarmCapacity];
+		this.swarmY = new double[swarmCapacity];
+		this.swarmRadius = new double[swarmCapacity];
+		this.lightningBolts = new int[Bounds.LIGHTNING_WALL_COUNT];
+		this.lightningColors = new Color[Bounds.LIGHTNING_WALL_COUNT];
+	}
+	
+	public long getSequence() {
+		return this.sequence;
+	}
+	
+	public double getTime() {
+		return this.time;
+	}
+}
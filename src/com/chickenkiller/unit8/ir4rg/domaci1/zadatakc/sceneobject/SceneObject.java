@@ -2,7 +2,20 @@ package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
 
 import java.awt.Graphics2D;
 
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
+
 public interface SceneObject {
 	public void update(final double deltaTime);
-	public void draw(final Graphics2D g2d);
+	/**
+	 * Draws the object, either directly to g2d, or by queueing draw commands
+	 * @param g2d Graphics scaled to window scale (0..1, 0..1)
+	 * @param queue Queue of commands submitted by the objects drawn before, to be flushed before drawing directly
+	 */
+	public void draw(final Graphics2D g2d, final RenderQueue queue);
+	/**
+	 * Adds the area of the window where the drawn object changed since the last call,
+	 * including the area it was drawn in before it moved
+	 * @param region Expressed compared to window scale (0..1, 0..1)
+	 */
+	public void addDirtyArea(final DirtyRegion region);
 }
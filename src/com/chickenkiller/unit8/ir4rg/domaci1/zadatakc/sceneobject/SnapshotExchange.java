@@ -0,0 +1,70 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Triple buffer of render snapshots, handed from the game thread to the thread that renders without locking.
+ * The game thread writes into its own snapshot, and publishes it by swapping it with the latest one.
+ * The rendering thread reads its own snapshot, and swaps it with the latest one whenever a newer one was published.
+ * Neither thread ever touches the snapshot owned by the other, and each swap is a single atomic operation.
+ */
+public class SnapshotExchange {
+	/**
+	 * Last published snapshot, not owned by either thread
+	 */
+	private final AtomicReference<RenderSnapshot> latest;
+	/**
+	 * Snapshot being written, only touched by the game thread
+	 */
+	private RenderSnapshot writing;
+	/**
+	 * Snapshot being rendered, only touched by the rendering thread
+	 */
+	private RenderSnapshot reading;
+	/**
+	 * Number of the last published snapshot, only touched by the game thread
+	 */
+	private long sequence = 0;
+	
+	/**
+	 * Allocates all three snapshots
+	 * @param swarmCapacity Maximum number of balls in the swarm
+	 */
+	public SnapshotExchange(final int swarmCapacity) {
+		this.latest = new AtomicReference<RenderSnapshot>(new RenderSnapshot(swarmCapacity));
+		this.writing = new RenderSnapshot(swarmCapacity);
+		this.reading = new RenderSnapshot(swarmCapacity);
+	}
+	
+	/**
+	 * Called from the game thread only
+	 * @return Snapshot to save the objects into before calling publish
+	 */
+	public RenderSnapshot getWriting() {
+		return this.writing;
+	}
+	
+	/**
+	 * Numbers the written snapshot, makes it the latest, and takes the previous latest one to write into next.
+	 * Called from the game thread only.
+	 * @param time Time up to which the game was simulated, in milliseconds
+	 */
+	public void publish(final double time) {
+		this.sequence += 1;
+		this.writing.time = time;
+		this.writing.sequence = this.sequence;
+		this.writing = this.latest.getAndSet(this.writing);
+	}
+	
+	/**
+	 * Takes the latest snapshot if it is newer than the one being read, giving the one being read back in exchange.
+	 * Called from the rendering thread only.
+	 * @return Newest snapshot, which stays unchanged until the next call, never saved if its sequence is 0
+	 */
+	public RenderSnapshot acquire() {
+		if (this.latest.get().sequence > this.reading.sequence) {
+			this.reading = this.latest.getAndSet(this.reading);
+		}
+		return this.reading;
+	}
+}
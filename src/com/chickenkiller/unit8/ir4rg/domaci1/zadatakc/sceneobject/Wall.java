@@ -1,45 +1,116 @@
 package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
 
 import java.awt.*;
-import java.awt.geom.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 
-import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Collision;
-import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.OrientedArea;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.SoundManager;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.AabbTree;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Box;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Circle;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.DirtyRegion;
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Impact;
 import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.Vector;
 
+/**
+ * Bricks placed on a grid, and free bricks placed anywhere, which can also slide from side to side.
+ * Level lines are rows of the grid, two digits per brick, except lines starting with @,
+ * which add a single free brick: @column row durabilityColor [speed],
+ * where column and row can be fractional, and speed is in columns per second.
+ */
 public class Wall implements SceneObject, Collidable {
-	private static final int BRICKS_PER_ROW = 13;
+	static final int BRICKS_PER_ROW = 13;
 	public static final Vector STARTING_POSITION = new Vector(
 			1.0 / (Wall.BRICKS_PER_ROW + 2), 1.0 / (Wall.BRICKS_PER_ROW + 2)
 	);
 	public static final double WALL_WIDTH = 1 - 2 * Wall.STARTING_POSITION.getX();
-	private static final int MAX_ROWS = 25;
+	static final int MAX_ROWS = 25;
 	private static final Vector BRICK_SCALE = new Vector(
 			Wall.WALL_WIDTH / Wall.BRICKS_PER_ROW, 1.0 / (Wall.MAX_ROWS + 5)
 	);
 	private static final String BRICK_ALLOWED_VALUES = "012345678";
-	
-	private final ArrayList<Brick> bricks;
+	private static final char FREE_BRICK_PREFIX = '@';
 	/**
-	 * Temporary area used to check collision with ball.
+	 * Distance by which free brick boxes are fattened in the tree, so that sliding bricks are rarely reinserted
 	 */
-	private final Area intersection;
+	private static final double TREE_MARGIN = 0.25 * Wall.BRICK_SCALE.getX();
 	
+	private final BrickStore bricks;
+	/**
+	 * Cached image of the bricks that are neither fading nor moving
+	 */
+	private final WallLayer layer;
+	/**
+	 * Uniform grid index of unbroken bricks, indexed by [row][column], holding indexes into bricks.
+	 * Empty cells and cells of broken bricks are -1.
+	 */
+	private final int[][] grid;
+	/**
+	 * Dynamic tree index of unbroken free bricks, holding indexes into bricks
+	 */
+	private final AabbTree tree;
+	/**
+	 * Tree leaf of each brick, or -1 for grid bricks and broken free bricks
+	 */
+	private final int[] proxies;
+	/**
+	 * Grid cell (row * BRICKS_PER_ROW + column) of each brick, or -1 for free bricks
+	 */
+	private final int[] cells;
 	/**
-	 * Total unbroken bricks in the wall.
+	 * Horizontal velocity of each brick, nonzero only for sliding free bricks
 	 */
-	private int durability;
+	private final double[] velocityX;
+	/**
+	 * Indexes of sliding bricks, the first slidingCount of which are valid
+	 */
+	private final int[] sliding;
+	private int slidingCount = 0;
+	/**
+	 * Area the sliding bricks were drawn in since the last call to addDirtyArea, grown by every update
+	 */
+	private final DirtyRegion movedArea;
+	/**
+	 * Temporary box and impact used for sweeping the ball.
+	 * The box is moved to the cell of each tested brick, since all bricks have the same size.
+	 */
+	private final Box cellBox;
+	private final Impact impact;
+	/**
+	 * Snapshot the fading and moving bricks are drawn from, only touched by the thread that renders
+	 */
+	private RenderSnapshot drawnSnapshot = null;
 	
 	/**
-	 * Parses the lines of bricks and adds them to the brick list
+	 * Parses the lines of bricks and adds them to the brick store, and to the grid or the tree
 	 * @param rows Lines of bricks read from the level file
 	 */
 	public Wall(final ArrayList<String> rows) {
-		this.bricks = new ArrayList<Brick>();
-		this.intersection = new Area();
-		for (int i = 0; (i < rows.size()) && (i < Wall.MAX_ROWS); i += 1) {
-			String row = rows.get(i);
+		// Every line holds either a whole grid row or a single free brick
+		int capacity = Wall.MAX_ROWS * Wall.BRICKS_PER_ROW + rows.size();
+		this.bricks = new BrickStore(capacity, Wall.BRICK_SCALE);
+		this.layer = new WallLayer(this.bricks, capacity, Wall.BRICK_SCALE.getX(), Wall.BRICK_SCALE.getY());
+		this.grid = new int[Wall.MAX_ROWS][Wall.BRICKS_PER_ROW];
+		for (int[] gridRow: this.grid) {
+			Arrays.fill(gridRow, -1);
+		}
+		this.tree = new AabbTree(16, Wall.TREE_MARGIN);
+		this.proxies = new int[capacity];
+		this.cells = new int[capacity];
+		this.velocityX = new double[capacity];
+		this.sliding = new int[capacity];
+		this.movedArea = new DirtyRegion(1);
+		this.cellBox = new Box();
+		this.impact = new Impact();
+		int i = 0;
+		for (String row: rows) {
+			if (!row.isEmpty() && row.charAt(0) == Wall.FREE_BRICK_PREFIX) {
+				this.addFreeBrick(row);
+				continue;
+			}
+			if (i == Wall.MAX_ROWS) {
+				continue;
+			}
 			for (int j = 0; (j < row.length() / 2) && (j < Wall.BRICKS_PER_ROW); j += 1) {
 				// Hash means start of comment, so skip the rest of the line
 				if (row.charAt(j) == '#' || row.charAt(j + 1) == '#') {
@@ -62,78 +133,254 @@ public class Wall implements SceneObject, Collidable {
 					continue;
 				}
 				int durability = Character.getNumericValue(durabilityChar),
-						colorNum = Character.getNumericValue(colorChar);
-				this.bricks.add(new Brick(position, Wall.BRICK_SCALE, durability, colorNum));
+						colorNum = Character.getNumericValue(colorChar),
+						brick = this.bricks.add(position, durability, colorNum);
+				this.grid[i][j] = brick;
+				this.layer.addGridBrick(i, j, brick);
+				this.proxies[brick] = -1;
+				this.cells[brick] = i * Wall.BRICKS_PER_ROW + j;
 			}
+			i += 1;
 		}
-		this.updateDurability();
 	}
 	
+	/**
+	 * Slides the moving bricks, bouncing them off the sides of the wall and refitting them in the tree,
+	 * and updates brick animations
+	 */
 	public void update(final double deltaTime) {
-		for (Brick b: this.bricks) {
-			b.update(deltaTime);
+		double minX = Wall.STARTING_POSITION.getX(),
+				maxX = minX + Wall.WALL_WIDTH - Wall.BRICK_SCALE.getX();
+		for (int k = 0; k < this.slidingCount; k += 1) {
+			int brick = this.sliding[k];
+			double x = this.bricks.getX(brick) + this.velocityX[brick] * deltaTime;
+			if (x < minX) {
+				x = 2 * minX - x;
+				this.velocityX[brick] = Math.abs(this.velocityX[brick]);
+			} else if (x > maxX) {
+				x = 2 * maxX - x;
+				this.velocityX[brick] = -Math.abs(this.velocityX[brick]);
+			}
+			this.bricks.setX(brick, x);
+			if (this.proxies[brick] != -1) {
+				double y = this.bricks.getY(brick);
+				this.tree.moveProxy(this.proxies[brick], x, y, x + Wall.BRICK_SCALE.getX(), y + Wall.BRICK_SCALE.getY());
+			}
+			this.bricks.addDrawnArea(this.movedArea, brick);
 		}
+		this.bricks.update(deltaTime);
 	}
 	
-	public void draw(final Graphics2D g2d) {
-		RenderingHints oldHints = g2d.getRenderingHints();
-		g2d.setRenderingHint(
-        	    RenderingHints.KEY_ANTIALIASING,
-        	    RenderingHints.VALUE_ANTIALIAS_ON);
-		
-		for (Brick b: this.bricks) {
-			b.draw(g2d);
+	/**
+	 * Adds the area the sliding bricks were drawn in since the last call, along with their current area,
+	 * which is kept to be added next time, and the areas of the bricks whose look changed
+	 * @param region
+	 */
+	public void addDirtyArea(final DirtyRegion region) {
+		for (int k = 0; k < this.slidingCount; k += 1) {
+			this.bricks.addDrawnArea(this.movedArea, this.sliding[k]);
+		}
+		region.add(this.movedArea);
+		this.movedArea.clear();
+		for (int k = 0; k < this.slidingCount; k += 1) {
+			this.bricks.addDrawnArea(this.movedArea, this.sliding[k]);
+		}
+		this.bricks.addDirtyArea(region);
+	}
+	
+	/**
+	 * Copies the fading and moving bricks into the snapshot, called from the game thread at the end of every physics frame
+	 * @param snapshot
+	 */
+	public void saveSnapshot(final RenderSnapshot snapshot) {
+		this.bricks.saveSnapshot(snapshot);
+	}
+	
+	/**
+	 * Sets the snapshot the fading and moving bricks are drawn from, called from the thread that renders before drawing
+	 * @param snapshot
+	 */
+	public void setSnapshot(final RenderSnapshot snapshot) {
+		this.drawnSnapshot = snapshot;
+	}
+	
+	/**
+	 * Queues copying the cached bricks, and then the fading and moving bricks of the snapshot on top of them,
+	 * in their own layer
+	 */
+	public void draw(final Graphics2D g2d, final RenderQueue queue) {
+		RenderSnapshot snapshot = this.drawnSnapshot;
+		if (snapshot == null) {
+			return;
 		}
+		queue.beginLayer();
+		this.layer.draw(g2d, queue);
 		
-		g2d.setRenderingHints(oldHints);
+		queue.beginLayer();
+		this.bricks.drawUncached(g2d, queue, snapshot);
 	}
-
+	
 	/**
-	 * Checks collision with passed area of all bricks that are unbroken
-	 * @param ball Collision area of the ball
+	 * Sweeps the ball against the unbroken bricks overlapped by the bounding box of the whole sweep,
+	 * found in the tree and in the grid cells, using the index of the brick as the contact index
+	 * @param ball Collision circle of the ball at the start of the sweep
 	 */
-	public void testCollision(final Area ball) throws Collision {
-		Vector nVector = Vector.ZERO;
-		for (Brick b: this.bricks) {
-			// First checks collision with whole brick area
-			if (b.isBroken()) {
-				continue;
-			}
-			this.intersection.reset();
-			this.intersection.add(ball);
-			this.intersection.intersect(b.getArea());
-			if (this.intersection.isEmpty()) {
-				continue;
-			}
-			// If brick collision passes, collide the brick and reduce wall durability...
-			b.collide();
-			this.updateDurability();
-			OrientedArea[] edgeAreas = b.getEdgeAreas();
-			for (OrientedArea edgeArea: edgeAreas) {
-				// ... and only then check collision with individual brick edges...
-				this.intersection.reset();
-				this.intersection.add(ball);
-				this.intersection.intersect(edgeArea.area);
-				if (this.intersection.isEmpty()) {
-					continue;
+	public void testSweep(final Circle ball, final double dx, final double dy, final ContactManifold manifold) {
+		double minX = ball.getX() + Math.min(dx, 0) - ball.getRadius(),
+				maxX = ball.getX() + Math.max(dx, 0) + ball.getRadius(),
+				minY = ball.getY() + Math.min(dy, 0) - ball.getRadius(),
+				maxY = ball.getY() + Math.max(dy, 0) + ball.getRadius();
+		int resultCount = this.tree.query(minX, minY, maxX, maxY);
+		for (int k = 0; k < resultCount; k += 1) {
+			this.sweepBrick(this.tree.getResult(k), ball, dx, dy, manifold);
+		}
+		
+		int firstColumn = Wall.getColumn(minX),
+				lastColumn = Wall.getColumn(maxX),
+				firstRow = Wall.getRow(minY),
+				lastRow = Wall.getRow(maxY);
+		if (lastColumn < 0 || firstColumn >= Wall.BRICKS_PER_ROW || lastRow < 0 || firstRow >= Wall.MAX_ROWS) {
+			return;
+		}
+		firstColumn = Math.max(firstColumn, 0);
+		lastColumn = Math.min(lastColumn, Wall.BRICKS_PER_ROW - 1);
+		firstRow = Math.max(firstRow, 0);
+		lastRow = Math.min(lastRow, Wall.MAX_ROWS - 1);
+		for (int i = firstRow; i <= lastRow; i += 1) {
+			for (int j = firstColumn; j <= lastColumn; j += 1) {
+				int brick = this.grid[i][j];
+				if (brick != -1) {
+					this.sweepBrick(brick, ball, dx, dy, manifold);
 				}
-				// ... and sum it all up in the total normal vector.
-				nVector = nVector.getSum(edgeArea.nVector);
 			}
 		}
-		if (nVector.getLengthSquared() > 0) {
-			throw new Collision(nVector.getNormalized());
+	}
+	
+	/**
+	 * Plays the sound of the hit brick, and damages it
+	 * @param manifold
+	 * @param contact
+	 */
+	public void collide(final ContactManifold manifold, final int contact) {
+		if (this.bricks.isInvincible(manifold.getIndex(contact))) {
+			SoundManager.getInstance().play("ceiling.wav");
+		} else {
+			SoundManager.getInstance().play("brick.wav");
+		}
+		this.damage(manifold, contact);
+	}
+	
+	/**
+	 * Collides the hit brick without a sound, and removes it from the grid or the tree if it broke.
+	 * Used directly for the balls of the swarm.
+	 * @param manifold
+	 * @param contact
+	 */
+	public void damage(final ContactManifold manifold, final int contact) {
+		int brick = manifold.getIndex(contact);
+		this.bricks.collide(brick);
+		if (!this.bricks.isBroken(brick)) {
+			return;
+		}
+		if (this.cells[brick] != -1) {
+			this.grid[this.cells[brick] / Wall.BRICKS_PER_ROW][this.cells[brick] % Wall.BRICKS_PER_ROW] = -1;
+		} else {
+			this.tree.destroyProxy(this.proxies[brick]);
+			this.proxies[brick] = -1;
 		}
 	}
 	
+	/**
+	 * @return Total unbroken bricks in the wall
+	 */
 	public int getDurability() {
-		return this.durability;
+		return this.bricks.getRemaining();
 	}
 	
-	private void updateDurability() {
-		this.durability = 0;
-		for (Brick brick: this.bricks) {
-			this.durability += (brick.isBroken()) ? 0 : 1;
+	/**
+	 * Parses a free brick line and adds the brick to the brick store and the tree,
+	 * skipping the brick if the line is invalid
+	 * @param line Line of the level file starting with FREE_BRICK_PREFIX
+	 */
+	private void addFreeBrick(String line) {
+		// Hash means start of comment, so skip the rest of the line
+		if (line.indexOf('#') != -1) {
+			line = line.substring(0, line.indexOf('#'));
+		}
+		String[] values = line.substring(1).trim().split("\\s+");
+		if (values.length < 3 || values[2].length() != 2 ||
+				(Wall.BRICK_ALLOWED_VALUES.indexOf(values[2].charAt(0)) == -1) ||
+				(Wall.BRICK_ALLOWED_VALUES.indexOf(values[2].charAt(1)) == -1)) {
+			return;
 		}
+		double column, row, speed = 0;
+		try {
+			column = Double.parseDouble(values[0]);
+			row = Double.parseDouble(values[1]);
+			if (values.length > 3) {
+				speed = Double.parseDouble(values[3]);
+			}
+		} catch (NumberFormatException e) {
+			return;
+		}
+		Vector position = new Vector(
+				Wall.BRICK_SCALE.getX() * column,
+				Wall.BRICK_SCALE.getY() * row
+		).getSum(Wall.STARTING_POSITION);
+		int brick = this.bricks.add(
+				position,
+				Character.getNumericValue(values[2].charAt(0)),
+				Character.getNumericValue(values[2].charAt(1))
+		);
+		this.cells[brick] = -1;
+		this.proxies[brick] = this.tree.createProxy(
+				position.getX(),
+				position.getY(),
+				position.getX() + Wall.BRICK_SCALE.getX(),
+				position.getY() + Wall.BRICK_SCALE.getY(),
+				brick
+		);
+		if (speed != 0) {
+			// Columns per second to window scale per millisecond
+			this.velocityX[brick] = speed * Wall.BRICK_SCALE.getX() / 1000;
+			this.bricks.setMoving(brick);
+			this.sliding[this.slidingCount] = brick;
+			this.slidingCount += 1;
+		} else {
+			this.layer.addFreeBrick(brick);
+		}
+	}
+	
+	/**
+	 * Sweeps the ball against a single brick, and adds the impact to the manifold if there is one
+	 * @param brick Index of the brick
+	 */
+	private void sweepBrick(final int brick, final Circle ball, final double dx, final double dy,
+			final ContactManifold manifold) {
+		this.cellBox.setFrame(
+				this.bricks.getX(brick),
+				this.bricks.getY(brick),
+				Wall.BRICK_SCALE.getX(),
+				Wall.BRICK_SCALE.getY()
+		);
+		if (this.cellBox.sweep(ball, dx, dy, this.impact)) {
+			manifold.add(this.impact, this, brick);
+		}
+	}
+	
+	/**
+	 * @param x Expressed compared to window scale (0..1)
+	 * @return Index of the grid column containing x, possibly outside of the grid
+	 */
+	static int getColumn(final double x) {
+		return (int) Math.floor((x - Wall.STARTING_POSITION.getX()) / Wall.BRICK_SCALE.getX());
+	}
+	
+	/**
+	 * @param y Expressed compared to window scale (0..1)
+	 * @return Index of the grid row containing y, possibly outside of the grid
+	 */
+	static int getRow(final double y) {
+		return (int) Math.floor((y - Wall.STARTING_POSITION.getY()) / Wall.BRICK_SCALE.getY());
 	}
 }
@@ -0,0 +1,233 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.sceneobject;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.Arrays;
+
+import com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util.AabbTree;
+
+/**
+ * Offscreen image of all bricks that are neither fading nor moving, rendered at device resolution.
+ * The image is only rebuilt when the device size changes or its contents are lost,
+ * and otherwise only the cells of bricks reported dirty by the brick store are re-rasterized,
+ * with the looks drained from the brick store along with them.
+ * A VolatileImage is used when the device supports it, with a BufferedImage fallback.
+ * Bricks that can be cached never move, so the layer indexes them once, in its own grid and tree,
+ * to find the bricks around a dirty one without touching the indexes the game thread changes.
+ */
+public class WallLayer {
+	/**
+	 * Pixels around a dirty brick that are cleared and redrawn along with it, to cover strokes and antialiasing
+	 */
+	private static final double DIRTY_PADDING = 2;
+	
+	private final BrickStore bricks;
+	/**
+	 * Brick size, expressed compared to window scale (0..1, 0..1)
+	 */
+	private final double brickWidth;
+	private final double brickHeight;
+	/**
+	 * Indexes of dirty bricks taken from the brick store
+	 */
+	private final int[] dirty;
+	private final Rectangle2D dirtyArea;
+	/**
+	 * Brick of every cell of the wall grid, indexed by [row][column], or -1 for empty cells.
+	 * Unlike the grid of the wall, cells of broken bricks keep their brick.
+	 */
+	private final int[][] grid;
+	/**
+	 * Free bricks that do not move
+	 */
+	private final AabbTree tree;
+	
+	private Image image = null;
+	private VolatileImage volatileImage = null;
+	private int width = 0;
+	private int height = 0;
+	
+	/**
+	 * @param bricks Store of the bricks to cache
+	 * @param capacity Capacity of the brick store
+	 * @param brickWidth Expressed compared to window scale (0..1)
+	 * @param brickHeight Expressed compared to window scale (0..1)
+	 */
+	public WallLayer(final BrickStore bricks, final int capacity, final double brickWidth, final double brickHeight) {
+		this.bricks = bricks;
+		this.brickWidth = brickWidth;
+		this.brickHeight = brickHeight;
+		this.dirty = new int[capacity];
+		this.dirtyArea = new Rectangle2D.Double();
+		this.grid = new int[Wall.MAX_ROWS][Wall.BRICKS_PER_ROW];
+		for (int[] gridRow: this.grid) {
+			Arrays.fill(gridRow, -1);
+		}
+		this.tree = new AabbTree(16, 0);
+	}
+	
+	/**
+	 * Indexes a brick of the grid, called while the wall is built
+	 * @param row
+	 * @param column
+	 * @param brick Index of the brick
+	 */
+	public void addGridBrick(final int row, final int column, final int brick) {
+		this.grid[row][column] = brick;
+	}
+	
+	/**
+	 * Indexes a free brick that never moves, called while the wall is built
+	 * @param brick Index of the brick
+	 */
+	public void addFreeBrick(final int brick) {
+		double x = this.bricks.getX(brick),
+				y = this.bricks.getY(brick);
+		this.tree.createProxy(x, y, x + this.brickWidth, y + this.brickHeight, brick);
+	}
+	
+	/**
+	 * Makes sure the image matches the device size and contents, re-rasterizes the dirty bricks,
+	 * and queues copying the image to the device, pixel for pixel
+	 * @param g2d Graphics scaled to window scale (0..1, 0..1), that the queue will be run against
+	 * @param queue
+	 */
+	public void draw(final Graphics2D g2d, final RenderQueue queue) {
+		AffineTransform oldTransform = g2d.getTransform();
+		int newWidth = (int) Math.round(oldTransform.getScaleX()),
+				newHeight = (int) Math.round(oldTransform.getScaleY());
+		if (newWidth <= 0 || newHeight <= 0) {
+			return;
+		}
+		// Contents lost while copying the previous frame are rebuilt
+		boolean rebuild = this.volatileImage != null && this.volatileImage.contentsLost();
+		if (this.image == null || newWidth != this.width || newHeight != this.height) {
+			this.width = newWidth;
+			this.height = newHeight;
+			this.createImage(g2d.getDeviceConfiguration());
+			rebuild = true;
+		} else if (this.volatileImage != null) {
+			int status = this.volatileImage.validate(g2d.getDeviceConfiguration());
+			if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+				this.createImage(g2d.getDeviceConfiguration());
+				rebuild = true;
+			} else if (status == VolatileImage.IMAGE_RESTORED) {
+				rebuild = true;
+			}
+		}
+		if (rebuild) {
+			this.rebuild();
+		} else {
+			this.redrawDirty();
+		}
+		
+		queue.image(this.image, oldTransform.getTranslateX(), oldTransform.getTranslateY(), 0, 0, this.width, this.height);
+	}
+	
+	/**
+	 * Tries to create a VolatileImage, and falls back to a BufferedImage if the device does not support it
+	 * @param configuration Device configuration of the graphics the image is drawn to
+	 */
+	private void createImage(final GraphicsConfiguration configuration) {
+		if (this.image != null) {
+			this.image.flush();
+		}
+		this.volatileImage = null;
+		try {
+			this.volatileImage = configuration.createCompatibleVolatileImage(this.width, this.height, Transparency.TRANSLUCENT);
+		} catch (UnsupportedOperationException e) {
+			// Not supported by this device, so fall back below
+		}
+		if (this.volatileImage != null) {
+			this.image = this.volatileImage;
+		} else {
+			this.image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+	}
+	
+	/**
+	 * Clears the whole image and draws every cached brick
+	 */
+	private void rebuild() {
+		// Everything is redrawn, so pending dirty bricks can be dropped
+		this.bricks.drainDirty(this.dirty);
+		Graphics2D imageG2d = this.createImageGraphics();
+		imageG2d.setComposite(AlphaComposite.Clear);
+		imageG2d.fillRect(0, 0, 1, 1);
+		imageG2d.setComposite(AlphaComposite.SrcOver);
+		for (int i = 0; i < this.bricks.getCount(); i += 1) {
+			if (this.bricks.isDrawnCached(i)) {
+				this.bricks.drawCached(imageG2d, i);
+			}
+		}
+		imageG2d.dispose();
+	}
+	
+	/**
+	 * For every dirty brick, clears its cell and redraws the cached bricks overlapping the cell,
+	 * found in the grid cells and the tree around it
+	 */
+	private void redrawDirty() {
+		int dirtyCount = this.bricks.drainDirty(this.dirty);
+		if (dirtyCount == 0) {
+			return;
+		}
+		Graphics2D imageG2d = this.createImageGraphics();
+		double paddingX = WallLayer.DIRTY_PADDING / this.width,
+				paddingY = WallLayer.DIRTY_PADDING / this.height;
+		for (int k = 0; k < dirtyCount; k += 1) {
+			int brick = this.dirty[k];
+			this.dirtyArea.setRect(
+					this.bricks.getX(brick) - paddingX,
+					this.bricks.getY(brick) - paddingY,
+					this.brickWidth + 2 * paddingX,
+					this.brickHeight + 2 * paddingY
+			);
+			imageG2d.setClip(this.dirtyArea);
+			imageG2d.setComposite(AlphaComposite.Clear);
+			imageG2d.fill(this.dirtyArea);
+			imageG2d.setComposite(AlphaComposite.SrcOver);
+			int firstColumn = Math.max(Wall.getColumn(this.dirtyArea.getMinX()), 0),
+					lastColumn = Math.min(Wall.getColumn(this.dirtyArea.getMaxX()), Wall.BRICKS_PER_ROW - 1),
+					firstRow = Math.max(Wall.getRow(this.dirtyArea.getMinY()), 0),
+					lastRow = Math.min(Wall.getRow(this.dirtyArea.getMaxY()), Wall.MAX_ROWS - 1);
+			for (int i = firstRow; i <= lastRow; i += 1) {
+				for (int j = firstColumn; j <= lastColumn; j += 1) {
+					this.redrawBrick(imageG2d, this.grid[i][j]);
+				}
+			}
+			int resultCount = this.tree.query(
+					this.dirtyArea.getMinX(), this.dirtyArea.getMinY(), this.dirtyArea.getMaxX(), this.dirtyArea.getMaxY());
+			for (int i = 0; i < resultCount; i += 1) {
+				this.redrawBrick(imageG2d, this.tree.getResult(i));
+			}
+		}
+		imageG2d.dispose();
+	}
+	
+	/**
+	 * Draws the brick if it is cached and overlaps the dirty area
+	 * @param imageG2d
+	 * @param brick Index of the brick, or -1 to do nothing
+	 */
+	private void redrawBrick(final Graphics2D imageG2d, final int brick) {
+		if (brick != -1 && this.bricks.isDrawnCached(brick) && this.dirtyArea.intersects(
+				this.bricks.getX(brick), this.bricks.getY(brick), this.brickWidth, this.brickHeight)) {
+			this.bricks.drawCached(imageG2d, brick);
+		}
+	}
+	
+	/**
+	 * @return Graphics of the image, scaled to window scale (0..1, 0..1), with antialiasing turned on
+	 */
+	private Graphics2D createImageGraphics() {
+		Graphics2D imageG2d = (Graphics2D) this.image.getGraphics();
+		imageG2d.scale(this.width, this.height);
+		imageG2d.setRenderingHint(
+				RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		return imageG2d;
+	}
+}
@@ -0,0 +1,362 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util;
+
+import java.util.Arrays;
+
+/**
+ * Dynamic bounding volume hierarchy of axis aligned boxes, used as a broadphase for objects that can move.
+ * Leaves hold boxes fattened by margin, so that small moves do not change the tree at all,
+ * and the tree is kept balanced with rotations, so that queries stay logarithmic.
+ * Nodes are kept in parallel arrays, and each node occupies the same index in all of them.
+ */
+public class AabbTree {
+	private static final int NULL_NODE = -1;
+	
+	private final double margin;
+	
+	private double[] minX;
+	private double[] minY;
+	private double[] maxX;
+	private double[] maxY;
+	/**
+	 * Parent of each node, or the next free node for nodes in the free list
+	 */
+	private int[] parent;
+	private int[] child1;
+	private int[] child2;
+	/**
+	 * Height of each node, 0 for leaves and -1 for free nodes
+	 */
+	private int[] height;
+	private int[] userData;
+	/**
+	 * Temporary stack and results of queries
+	 */
+	private int[] stack;
+	private int[] results;
+	
+	private int capacity = 0;
+	private int root = AabbTree.NULL_NODE;
+	private int freeList = AabbTree.NULL_NODE;
+	
+	/**
+	 * @param initialCapacity Number of nodes to allocate up front, grown as needed
+	 * @param margin Distance by which leaf boxes are grown on every side
+	 */
+	public AabbTree(final int initialCapacity, final double margin) {
+		this.margin = margin;
+		this.minX = new double[0];
+		this.minY = new double[0];
+		this.maxX = new double[0];
+		this.maxY = new double[0];
+		this.parent = new int[0];
+		this.child1 = new int[0];
+		this.child2 = new int[0];
+		this.height = new int[0];
+		this.userData = new int[0];
+		this.stack = new int[16];
+		this.results = new int[16];
+		this.grow(Math.max(initialCapacity, 1));
+	}
+	
+	/**
+	 * Inserts a new leaf for the given box
+	 * @param userData Value returned by queries that hit this leaf
+	 * @return Id of the leaf, used to move or remove it
+	 */
+	public int createProxy(final double minX, final double minY, final double maxX, final double maxY, final int userData) {
+		int proxy = this.allocateNode();
+		this.setFatBox(proxy, minX, minY, maxX, maxY);
+		this.userData[proxy] = userData;
+		this.insertLeaf(proxy);
+		return proxy;
+	}
+	
+	public void destroyProxy(final int proxy) {
+		this.removeLeaf(proxy);
+		this.freeNode(proxy);
+	}
+	
+	/**
+	 * Moves the leaf to the new box. The tree is only changed if the box left the fattened box of the leaf.
+	 * @return True if the leaf was reinserted, otherwise false
+	 */
+	public boolean moveProxy(final int proxy, final double minX, final double minY, final double maxX, final double maxY) {
+		if (this.minX[proxy] <= minX && this.minY[proxy] <= minY && this.maxX[proxy] >= maxX && this.maxY[proxy] >= maxY) {
+			return false;
+		}
+		this.removeLeaf(proxy);
+		this.setFatBox(proxy, minX, minY, maxX, maxY);
+		this.insertLeaf(proxy);
+		return true;
+	}
+	
+	/**
+	 * Finds all leaves whose fattened box overlaps the given box.
+	 * Their user data can be read with getResult, until the next query.
+	 * @return Number of leaves found
+	 */
+	public int query(final double minX, final double minY, final double maxX, final double maxY) {
+		int resultCount = 0,
+				stackSize = 0;
+		if (this.root != AabbTree.NULL_NODE) {
+			this.stack[stackSize++] = this.root;
+		}
+		while (stackSize > 0) {
+			int node = this.stack[--stackSize];
+			if (this.maxX[node] < minX || this.minX[node] > maxX || this.maxY[node] < minY || this.minY[node] > maxY) {
+				continue;
+			}
+			if (this.isLeaf(node)) {
+				if (resultCount == this.results.length) {
+					this.results = Arrays.copyOf(this.results, 2 * this.results.length);
+				}
+				this.results[resultCount++] = this.userData[node];
+			} else {
+				if (stackSize + 2 > this.stack.length) {
+					this.stack = Arrays.copyOf(this.stack, 2 * this.stack.length);
+				}
+				this.stack[stackSize++] = this.child1[node];
+				this.stack[stackSize++] = this.child2[node];
+			}
+		}
+		return resultCount;
+	}
+	
+	/**
+	 * @param i Index of the result, less than the count returned by the last query
+	 * @return User data of the leaf
+	 */
+	public int getResult(final int i) {
+		return this.results[i];
+	}
+	
+	/**
+	 * @return Height of the tree, or -1 if it is empty
+	 */
+	public int getHeight() {
+		return (this.root == AabbTree.NULL_NODE) ? -1 : this.height[this.root];
+	}
+	
+	private boolean isLeaf(final int node) {
+		return this.child1[node] == AabbTree.NULL_NODE;
+	}
+	
+	private void setFatBox(final int node, final double minX, final double minY, final double maxX, final double maxY) {
+		this.minX[node] = minX - this.margin;
+		this.minY[node] = minY - this.margin;
+		this.maxX[node] = maxX + this.margin;
+		this.maxY[node] = maxY + this.margin;
+	}
+	
+	/**
+	 * Sets the box of node to the union of the boxes of a and b
+	 */
+	private void setUnion(final int node, final int a, final int b) {
+		this.minX[node] = Math.min(this.minX[a], this.minX[b]);
+		this.minY[node] = Math.min(this.minY[a], this.minY[b]);
+		this.maxX[node] = Math.max(this.maxX[a], this.maxX[b]);
+		this.maxY[node] = Math.max(this.maxY[a], this.maxY[b]);
+	}
+	
+	private double getPerimeter(final int node) {
+		return 2 * (this.maxX[node] - this.minX[node] + this.maxY[node] - this.minY[node]);
+	}
+	
+	private double getUnionPerimeter(final int a, final int b) {
+		return 2 * (Math.max(this.maxX[a], this.maxX[b]) - Math.min(this.minX[a], this.minX[b])
+				+ Math.max(this.maxY[a], this.maxY[b]) - Math.min(this.minY[a], this.minY[b]));
+	}
+	
+	/**
+	 * Recalculates the box and height of node from its children
+	 */
+	private void refit(final int node) {
+		this.setUnion(node, this.child1[node], this.child2[node]);
+		this.height[node] = 1 + Math.max(this.height[this.child1[node]], this.height[this.child2[node]]);
+	}
+	
+	/**
+	 * Grows all node arrays to newCapacity, and adds the new nodes to the free list
+	 */
+	private void grow(final int newCapacity) {
+		this.minX = Arrays.copyOf(this.minX, newCapacity);
+		this.minY = Arrays.copyOf(this.minY, newCapacity);
+		this.maxX = Arrays.copyOf(this.maxX, newCapacity);
+		this.maxY = Arrays.copyOf(this.maxY, newCapacity);
+		this.parent = Arrays.copyOf(this.parent, newCapacity);
+		this.child1 = Arrays.copyOf(this.child1, newCapacity);
+		this.child2 = Arrays.copyOf(this.child2, newCapacity);
+		this.height = Arrays.copyOf(this.height, newCapacity);
+		this.userData = Arrays.copyOf(this.userData, newCapacity);
+		for (int node = newCapacity - 1; node >= this.capacity; node -= 1) {
+			this.freeNode(node);
+		}
+		this.capacity = newCapacity;
+	}
+	
+	private int allocateNode() {
+		if (this.freeList == AabbTree.NULL_NODE) {
+			this.grow(2 * this.capacity);
+		}
+		int node = this.freeList;
+		this.freeList = this.parent[node];
+		this.parent[node] = AabbTree.NULL_NODE;
+		this.child1[node] = AabbTree.NULL_NODE;
+		this.child2[node] = AabbTree.NULL_NODE;
+		this.height[node] = 0;
+		this.userData[node] = -1;
+		return node;
+	}
+	
+	private void freeNode(final int node) {
+		this.parent[node] = this.freeList;
+		this.height[node] = -1;
+		this.freeList = node;
+	}
+	
+	/**
+	 * Walks down the tree choosing the sibling that grows the total perimeter the least,
+	 * pairs the leaf with it under a new parent, and then refits and balances all ancestors
+	 */
+	private void insertLeaf(final int leaf) {
+		if (this.root == AabbTree.NULL_NODE) {
+			this.root = leaf;
+			this.parent[leaf] = AabbTree.NULL_NODE;
+			return;
+		}
+		int sibling = this.root;
+		while (!this.isLeaf(sibling)) {
+			int c1 = this.child1[sibling],
+					c2 = this.child2[sibling];
+			double combinedPerimeter = this.getUnionPerimeter(sibling, leaf),
+					// Cost of creating a new parent for this node and the leaf
+					cost = 2 * combinedPerimeter,
+					// Minimum cost of pushing the leaf further down the tree
+					inheritanceCost = 2 * (combinedPerimeter - this.getPerimeter(sibling)),
+					cost1 = this.getDescendCost(c1, leaf) + inheritanceCost,
+					cost2 = this.getDescendCost(c2, leaf) + inheritanceCost;
+			if (cost < cost1 && cost < cost2) {
+				break;
+			}
+			sibling = (cost1 < cost2) ? c1 : c2;
+		}
+		
+		int oldParent = this.parent[sibling],
+				newParent = this.allocateNode();
+		this.parent[newParent] = oldParent;
+		this.setUnion(newParent, leaf, sibling);
+		this.height[newParent] = this.height[sibling] + 1;
+		this.child1[newParent] = sibling;
+		this.child2[newParent] = leaf;
+		this.parent[sibling] = newParent;
+		this.parent[leaf] = newParent;
+		if (oldParent == AabbTree.NULL_NODE) {
+			this.root = newParent;
+		} else if (this.child1[oldParent] == sibling) {
+			this.child1[oldParent] = newParent;
+		} else {
+			this.child2[oldParent] = newParent;
+		}
+		
+		this.refitAncestors(this.parent[leaf]);
+	}
+	
+	private double getDescendCost(final int child, final int leaf) {
+		if (this.isLeaf(child)) {
+			return this.getUnionPerimeter(child, leaf);
+		}
+		return this.getUnionPerimeter(child, leaf) - this.getPerimeter(child);
+	}
+	
+	/**
+	 * Replaces the parent of the leaf with the sibling of the leaf, and then refits and balances all ancestors
+	 */
+	private void removeLeaf(final int leaf) {
+		if (leaf == this.root) {
+			this.root = AabbTree.NULL_NODE;
+			return;
+		}
+		int oldParent = this.parent[leaf],
+				grandParent = this.parent[oldParent],
+				sibling = (this.child1[oldParent] == leaf) ? this.child2[oldParent] : this.child1[oldParent];
+		this.freeNode(oldParent);
+		this.parent[sibling] = grandParent;
+		if (grandParent == AabbTree.NULL_NODE) {
+			this.root = sibling;
+			return;
+		}
+		if (this.child1[grandParent] == oldParent) {
+			this.child1[grandParent] = sibling;
+		} else {
+			this.child2[grandParent] = sibling;
+		}
+		this.refitAncestors(grandParent);
+	}
+	
+	private void refitAncestors(int node) {
+		while (node != AabbTree.NULL_NODE) {
+			node = this.balance(node);
+			this.refit(node);
+			node = this.parent[node];
+		}
+	}
+	
+	/**
+	 * If one child of node is more than one level higher than the other, rotates it up
+	 * @return The node that took the place of node
+	 */
+	private int balance(final int a) {
+		if (this.isLeaf(a) || this.height[a] < 2) {
+			return a;
+		}
+		int b = this.child1[a],
+				c = this.child2[a],
+				balance = this.height[c] - this.height[b];
+		if (balance > 1) {
+			this.rotateUp(a, c, b, false);
+			return c;
+		}
+		if (balance < -1) {
+			this.rotateUp(a, b, c, true);
+			return b;
+		}
+		return a;
+	}
+	
+	/**
+	 * Makes child the parent of a, keeping the higher grandchild under child, and moving the lower one under a
+	 * @param a Node being rotated down
+	 * @param child Child of a being rotated up
+	 * @param otherChild Other child of a
+	 * @param childIsFirst True if child is child1 of a, otherwise false
+	 */
+	private void rotateUp(final int a, final int child, final int otherChild, final boolean childIsFirst) {
+		int f = this.child1[child],
+				g = this.child2[child];
+		
+		this.child1[child] = a;
+		this.parent[child] = this.parent[a];
+		this.parent[a] = child;
+		if (this.parent[child] == AabbTree.NULL_NODE) {
+			this.root = child;
+		} else if (this.child1[this.parent[child]] == a) {
+			this.child1[this.parent[child]] = child;
+		} else {
+			this.child2[this.parent[child]] = child;
+		}
+		
+		int higher = (this.height[f] > this.height[g]) ? f : g,
+				lower = (higher == f) ? g : f;
+		this.child2[child] = higher;
+		if (childIsFirst) {
+			this.child1[a] = lower;
+		} else {
+			this.child2[a] = lower;
+		}
+		this.parent[lower] = a;
+		this.setUnion(a, otherChild, lower);
+		this.height[a] = 1 + Math.max(this.height[otherChild], this.height[lower]);
+		this.setUnion(child, a, higher);
+		this.height[child] = 1 + Math.max(this.height[a], this.height[higher]);
+	}
+}
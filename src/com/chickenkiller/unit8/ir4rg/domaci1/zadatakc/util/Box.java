@@ -0,0 +1,208 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util;
+
+/**
+ * Axis aligned rectangle, optionally with rounded corners, that can be tested against a Circle in closed form.
+ * A rounded box is treated as the inner rectangle (shrunk by cornerRadius on every side) grown by cornerRadius,
+ * so both overlap and contact normal reduce to finding the closest point on the inner rectangle.
+ */
+public class Box {
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
+	private final double cornerRadius;
+	
+	/**
+	 * @param x Left edge
+	 * @param y Top edge
+	 * @param width
+	 * @param height
+	 * @param cornerRadius Radius of the corner rounding, at most half of the shorter side
+	 */
+	public Box(final double x, final double y, final double width, final double height, final double cornerRadius) {
+		this.cornerRadius = cornerRadius;
+		this.setFrame(x, y, width, height);
+	}
+	
+	public Box(final double x, final double y, final double width, final double height) {
+		this(x, y, width, height, 0);
+	}
+	
+	public Box() {
+		this(0, 0, 0, 0, 0);
+	}
+	
+	public void setFrame(final double x, final double y, final double width, final double height) {
+		this.minX = x; this.minY = y;
+		this.maxX = x + width; this.maxY = y + height;
+	}
+	
+	public double getMinX() { return this.minX; }
+	public double getMinY() { return this.minY; }
+	public double getMaxX() { return this.maxX; }
+	public double getMaxY() { return this.maxY; }
+	public double getCornerRadius() { return this.cornerRadius; }
+	
+	/**
+	 * Touching edges are not considered an overlap, same as with an empty java.awt.geom.Area intersection
+	 * @param circle
+	 * @return True if the circle and this box overlap, otherwise false
+	 */
+	public boolean intersects(final Circle circle) {
+		double dx = circle.getX() - this.getClosestX(circle.getX()),
+				dy = circle.getY() - this.getClosestY(circle.getY()),
+				reach = circle.getRadius() + this.cornerRadius;
+		return dx * dx + dy * dy < reach * reach;
+	}
+	
+	/**
+	 * Sweeps the circle along (dx, dy) and calculates the time of impact with this box in closed form.
+	 * The circle center is traced as a ray against the inner rectangle grown by circle radius plus cornerRadius,
+	 * falling back to a ray-vs-circle test around the inner corner when the ray enters through a rounded corner.
+	 * A circle already overlapping this box only hits if it is moving towards it, at time zero.
+	 * @param circle Circle at the start of the sweep
+	 * @param dx Displacement along X
+	 * @param dy Displacement along Y
+	 * @param impact Overwritten with the time, normal and penetration of the impact, if there is one
+	 * @return True if the circle hits this box while moving towards it, otherwise false
+	 */
+	public boolean sweep(final Circle circle, final double dx, final double dy, final Impact impact) {
+		double x = circle.getX(),
+				y = circle.getY();
+		if (this.intersects(circle)) {
+			return this.recordOverlap(circle, dx, dy, impact);
+		}
+		if (dx == 0 && dy == 0) {
+			return false;
+		}
+		double reach = circle.getRadius() + this.cornerRadius,
+				innerMinX = this.minX + this.cornerRadius,
+				innerMaxX = this.maxX - this.cornerRadius,
+				innerMinY = this.minY + this.cornerRadius,
+				innerMaxY = this.maxY - this.cornerRadius,
+				tEnterX = Double.NEGATIVE_INFINITY,
+				tExitX = Double.POSITIVE_INFINITY,
+				tEnterY = Double.NEGATIVE_INFINITY,
+				tExitY = Double.POSITIVE_INFINITY;
+		// Slab test of the circle center against the grown rectangle
+		if (dx != 0) {
+			double t1 = (innerMinX - reach - x) / dx,
+					t2 = (innerMaxX + reach - x) / dx;
+			tEnterX = Math.min(t1, t2);
+			tExitX = Math.max(t1, t2);
+		} else if (x <= innerMinX - reach || x >= innerMaxX + reach) {
+			return false;
+		}
+		if (dy != 0) {
+			double t1 = (innerMinY - reach - y) / dy,
+					t2 = (innerMaxY + reach - y) / dy;
+			tEnterY = Math.min(t1, t2);
+			tExitY = Math.max(t1, t2);
+		} else if (y <= innerMinY - reach || y >= innerMaxY + reach) {
+			return false;
+		}
+		double tEnter = Math.max(Math.max(tEnterX, tEnterY), 0),
+				tExit = Math.min(tExitX, tExitY);
+		if (tEnter >= tExit || tEnter > 1) {
+			return false;
+		}
+		double hitX = x + tEnter * dx,
+				hitY = y + tEnter * dy,
+				cornerX = Math.max(innerMinX, Math.min(hitX, innerMaxX)),
+				cornerY = Math.max(innerMinY, Math.min(hitY, innerMaxY));
+		if (hitX == cornerX) {
+			// Entered through the top or bottom face
+			return Box.record(impact, tEnter, 0, -Math.signum(dy), 0, dx, dy);
+		}
+		if (hitY == cornerY) {
+			// Entered through the left or right face
+			return Box.record(impact, tEnter, -Math.signum(dx), 0, 0, dx, dy);
+		}
+		// Entered through a corner, so solve |(x, y) + t * (dx, dy) - corner| = reach
+		double fx = x - cornerX,
+				fy = y - cornerY,
+				a = dx * dx + dy * dy,
+				b = fx * dx + fy * dy,
+				c = fx * fx + fy * fy - reach * reach,
+				discriminant = b * b - a * c;
+		if (discriminant < 0) {
+			return false;
+		}
+		double t = Math.max((-b - Math.sqrt(discriminant)) / a, 0);
+		if (t > 1) {
+			return false;
+		}
+		return Box.record(impact, t, (fx + t * dx) / reach, (fy + t * dy) / reach, 0, dx, dy);
+	}
+	
+	/**
+	 * Should only be called when intersects returns true.
+	 * @param circle
+	 * @return Depth by which the circle overlaps this box, along the contact normal
+	 */
+	public double getPenetration(final Circle circle) {
+		double dx = circle.getX() - this.getClosestX(circle.getX()),
+				dy = circle.getY() - this.getClosestY(circle.getY()),
+				reach = circle.getRadius() + this.cornerRadius;
+		if (dx != 0 || dy != 0) {
+			return reach - Math.sqrt(dx * dx + dy * dy);
+		}
+		return reach + Math.min(
+				Math.min(circle.getX() - this.minX, this.maxX - circle.getX()),
+				Math.min(circle.getY() - this.minY, this.maxY - circle.getY())
+		) - this.cornerRadius;
+	}
+	
+	/**
+	 * Records the impact at time zero of a circle already overlapping this box,
+	 * along the unit normal of the contact, pointing from this box towards the circle.
+	 * If the circle center is inside the inner rectangle, the side with the smallest penetration is used.
+	 * @return True if impact was overwritten, otherwise false
+	 */
+	private boolean recordOverlap(final Circle circle, final double dx, final double dy, final Impact impact) {
+		double nX = circle.getX() - this.getClosestX(circle.getX()),
+				nY = circle.getY() - this.getClosestY(circle.getY());
+		if (nX != 0 || nY != 0) {
+			double length = Math.sqrt(nX * nX + nY * nY);
+			nX /= length;
+			nY /= length;
+		} else {
+			double left = circle.getX() - this.minX,
+					right = this.maxX - circle.getX(),
+					top = circle.getY() - this.minY,
+					bottom = this.maxY - circle.getY(),
+					min = Math.min(Math.min(left, right), Math.min(top, bottom));
+			if (min == top) {
+				nY = -1;
+			} else if (min == bottom) {
+				nY = 1;
+			} else if (min == left) {
+				nX = -1;
+			} else {
+				nX = 1;
+			}
+		}
+		return Box.record(impact, 0, nX, nY, this.getPenetration(circle), dx, dy);
+	}
+	
+	/**
+	 * Records the impact if the circle is moving against the normal
+	 * @return True if impact was overwritten, otherwise false
+	 */
+	private static boolean record(final Impact impact, final double time, final double nX, final double nY,
+			final double penetration, final double dx, final double dy) {
+		if (nX * dx + nY * dy >= 0) {
+			return false;
+		}
+		impact.set(time, nX, nY, penetration);
+		return true;
+	}
+	
+	private double getClosestX(final double x) {
+		return Math.max(this.minX + this.cornerRadius, Math.min(x, this.maxX - this.cornerRadius));
+	}
+	
+	private double getClosestY(final double y) {
+		return Math.max(this.minY + this.cornerRadius, Math.min(y, this.maxY - this.cornerRadius));
+	}
+}
@@ -0,0 +1,27 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util;
+
+/**
+ * Mutable circle used as the collision shape of the ball.
+ * Kept mutable so that a single instance can be moved every physics frame.
+ */
+public class Circle {
+	private double x;
+	private double y;
+	private double radius;
+	
+	public Circle(final double x, final double y, final double radius) {
+		this.set(x, y, radius);
+	}
+	
+	public Circle() {
+		this(0, 0, 0);
+	}
+	
+	public void set(final double x, final double y, final double radius) {
+		this.x = x; this.y = y; this.radius = radius;
+	}
+	
+	public double getX() { return this.x; }
+	public double getY() { return this.y; }
+	public double getRadius() { return this.radius; }
+}
@@ -0,0 +1,138 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util;
+
+/**
+ * Areas that changed, kept as a few disjoint boxes, expressed compared to window scale (0..1, 0..1).
+ * An added rectangle is merged into the box it overlaps, and boxes that overlap after growing are merged as well.
+ * Once all boxes are taken, the rectangle is merged into the box that grows the least.
+ * Boxes are kept in parallel arrays, each box occupies the same index in all of them.
+ */
+public class DirtyRegion {
+	private final double[] minX;
+	private final double[] minY;
+	private final double[] maxX;
+	private final double[] maxY;
+	private int count = 0;
+	
+	/**
+	 * @param capacity Maximum number of boxes, 1 to keep only the bounding box
+	 */
+	public DirtyRegion(final int capacity) {
+		this.minX = new double[capacity];
+		this.minY = new double[capacity];
+		this.maxX = new double[capacity];
+		this.maxY = new double[capacity];
+	}
+	
+	/**
+	 * Grows the region to include the rectangle
+	 * @param x Left edge
+	 * @param y Top edge
+	 * @param width
+	 * @param height
+	 */
+	public void add(final double x, final double y, final double width, final double height) {
+		int box = -1;
+		for (int i = 0; i < this.count; i += 1) {
+			if (this.overlaps(i, x, y, x + width, y + height)) {
+				box = i;
+				break;
+			}
+		}
+		if (box == -1 && this.count < this.minX.length) {
+			box = this.count;
+			this.minX[box] = x; this.minY[box] = y;
+			this.maxX[box] = x + width; this.maxY[box] = y + height;
+			this.count += 1;
+			return;
+		}
+		if (box == -1) {
+			box = this.getCheapestBox(x, y, x + width, y + height);
+		}
+		this.grow(box, x, y, x + width, y + height);
+		this.mergeOverlapping(box);
+	}
+	
+	/**
+	 * Grows the region to include all boxes of the other region
+	 * @param region
+	 */
+	public void add(final DirtyRegion region) {
+		for (int i = 0; i < region.count; i += 1) {
+			this.add(region.minX[i], region.minY[i], region.maxX[i] - region.minX[i], region.maxY[i] - region.minY[i]);
+		}
+	}
+	
+	public void clear() {
+		this.count = 0;
+	}
+	
+	public boolean isEmpty() { return this.count == 0; }
+	public int getCount() { return this.count; }
+	public double getMinX(final int i) { return this.minX[i]; }
+	public double getMinY(final int i) { return this.minY[i]; }
+	public double getMaxX(final int i) { return this.maxX[i]; }
+	public double getMaxY(final int i) { return this.maxY[i]; }
+	
+	/**
+	 * @return Total area of the parts of the boxes inside the window, as a fraction of the window area
+	 */
+	public double getArea() {
+		double area = 0;
+		for (int i = 0; i < this.count; i += 1) {
+			double width = Math.min(this.maxX[i], 1) - Math.max(this.minX[i], 0),
+					height = Math.min(this.maxY[i], 1) - Math.max(this.minY[i], 0);
+			area += Math.max(width, 0) * Math.max(height, 0);
+		}
+		return area;
+	}
+	
+	private boolean overlaps(final int i, final double x0, final double y0, final double x1, final double y1) {
+		return x0 <= this.maxX[i] && x1 >= this.minX[i] && y0 <= this.maxY[i] && y1 >= this.minY[i];
+	}
+	
+	private void grow(final int i, final double x0, final double y0, final double x1, final double y1) {
+		this.minX[i] = Math.min(this.minX[i], x0);
+		this.minY[i] = Math.min(this.minY[i], y0);
+		this.maxX[i] = Math.max(this.maxX[i], x1);
+		this.maxY[i] = Math.max(this.maxY[i], y1);
+	}
+	
+	/**
+	 * @return Index of the box whose area grows the least by including the rectangle
+	 */
+	private int getCheapestBox(final double x0, final double y0, final double x1, final double y1) {
+		int cheapest = 0;
+		double cheapestGrowth = Double.MAX_VALUE;
+		for (int i = 0; i < this.count; i += 1) {
+			double growth = (Math.max(this.maxX[i], x1) - Math.min(this.minX[i], x0)) *
+					(Math.max(this.maxY[i], y1) - Math.min(this.minY[i], y0)) -
+					(this.maxX[i] - this.minX[i]) * (this.maxY[i] - this.minY[i]);
+			if (growth < cheapestGrowth) {
+				cheapest = i;
+				cheapestGrowth = growth;
+			}
+		}
+		return cheapest;
+	}
+	
+	/**
+	 * Merges every other box that overlaps the grown box into it, until none do
+	 * @param box Index of the grown box
+	 */
+	private void mergeOverlapping(int box) {
+		for (int i = 0; i < this.count; i += 1) {
+			if (i == box || !this.overlaps(box, this.minX[i], this.minY[i], this.maxX[i], this.maxY[i])) {
+				continue;
+			}
+			this.grow(box, this.minX[i], this.minY[i], this.maxX[i], this.maxY[i]);
+			// Move the last box in place of the merged one, and start over since the box grew
+			this.count -= 1;
+			this.minX[i] = this.minX[this.count]; this.minY[i] = this.minY[this.count];
+			this.maxX[i] = this.maxX[this.count]; this.maxY[i] = this.maxY[this.count];
+			if (box == this.count) {
+				box = i;
+			}
+			i = -1;
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util;
+
+/**
+ * Result of sweeping a circle against a single shape.
+ * Reused between sweeps, so it is overwritten instead of reallocated.
+ */
+public class Impact {
+	/**
+	 * Fraction (0..1) of the swept displacement at which the impact happens
+	 */
+	private double time;
+	/**
+	 * Unit normal of the impact, pointing from the hit object towards the ball
+	 */
+	private double nX;
+	private double nY;
+	/**
+	 * Depth by which the circle already overlaps the shape, only non-zero for impacts at time zero
+	 */
+	private double penetration;
+	
+	public void set(final double time, final double nX, final double nY, final double penetration) {
+		this.time = time; this.nX = nX; this.nY = nY; this.penetration = penetration;
+	}
+	
+	public double getTime() { return this.time; }
+	public double getNX() { return this.nX; }
+	public double getNY() { return this.nY; }
+	public double getPenetration() { return this.penetration; }
+}
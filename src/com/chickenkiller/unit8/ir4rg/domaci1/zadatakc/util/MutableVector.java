@@ -0,0 +1,70 @@
+package com.chickenkiller.unit8.ir4rg.domaci1.zadatakc.util;
+
+/**
+ * Mutable 2D counterpart of Vector, used on the physics hot path.
+ * All operations work in place and return this object, so that no vectors are allocated per frame.
+ * Immutable Vector is still used for constants and configuration.
+ */
+public final class MutableVector {
+	private double x;
+	private double y;
+	
+	public MutableVector(final double x, final double y) {
+		this.x = x; this.y = y;
+	}
+	
+	public MutableVector(final Vector v) {
+		this(v.getX(), v.getY());
+	}
+	
+	public String toString() {
+		return "(" + x + ", " + y + ")";
+	}
+	
+	public double getX() { return this.x; }
+	public double getY() { return this.y; }
+	
+	public MutableVector setX(final double x) {
+		this.x = x;
+		return this;
+	}
+	
+	public MutableVector setY(final double y) {
+		this.y = y;
+		return this;
+	}
+	
+	public MutableVector set(final double x, final double y) {
+		this.x = x; this.y = y;
+		return this;
+	}
+	
+	public MutableVector set(final MutableVector v) {
+		return this.set(v.x, v.y);
+	}
+	
+	public MutableVector add(final double x, final double y) {
+		this.x += x; this.y += y;
+		return this;
+	}
+	
+	/**
+	 * Adds v multiplied by f, without modifying v
+	 */
+	public MutableVector addScaled(final MutableVector v, final double f) {
+		return this.add(v.x * f, v.y * f);
+	}
+	
+	public MutableVector scale(final double f) {
+		this.x *= f; this.y *= f;
+		return this;
+	}
+	
+	public double getLengthSquared() {
+		return this.x * this.x + this.y * this.y;
+	}
+	
+	public double getLength() {
+		return Math.sqrt(this.getLengthSquared());
+	}
+}
@@ -68,7 +68,10 @@ public final class Vector {
 	}
 
 	public double getDistanceSquared(final Vector v) {
-		return Math.pow(this.x - v.x, 2) + Math.pow(this.y - v.y, 2) + Math.pow(this.z - v.z, 2);
+		double dx = this.x - v.x,
+				dy = this.y - v.y,
+				dz = this.z - v.z;
+		return dx * dx + dy * dy + dz * dz;
 	}
 	
 	public double getDistance(final Vector v) {